@@ -1,9 +1,54 @@
 package rpms;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import jakarta.mail.*;
 import jakarta.mail.internet.*;
@@ -107,6 +152,8 @@ class Patient extends User {
     private LocalDateTime appointmentDateTime;
     private MedicalHistory medicalHistory;
     private ChatClient chatClient;
+    private String ward;
+    private String condition;
 
     public Patient(String userID, String userName, String contactInfo, String gender, LocalDate birthDate) throws RpmsException {
         super(userID, userName, contactInfo, gender);
@@ -138,11 +185,22 @@ class Patient extends User {
         this.appointmentDateTime = appointmentDateTime;
     }
 
+    public void setWard(String ward) {
+        this.ward = ward == null || ward.trim().isEmpty() ? null : ward.trim();
+    }
+
+    public void setCondition(String condition) {
+        this.condition = condition == null || condition.trim().isEmpty() ? null : condition.trim();
+    }
+
     public LocalDate getBirthDate() { return birthDate; }
+    public String getWard() { return ward; }
+    public String getCondition() { return condition; }
     public LocalDate getAdmissionDate() { return admissionDate; }
     public LocalDateTime getAppointmentDateTime() { return appointmentDateTime; }
     public MedicalHistory getMedicalHistory() { return medicalHistory; }
     public void setChatClient(ChatClient chatClient) { this.chatClient = chatClient; }
+    public ChatClient getChatClient() { return chatClient; }
 
     public void uploadVitals(VitalSign vital, VitalsDatabase database) throws RpmsException {
         if (vital == null) {
@@ -151,6 +209,25 @@ class Patient extends User {
         database.addVitalSign(vital);
     }
 
+    public void uploadVitals(VitalSign vital, VitalsPipeline pipeline) throws RpmsException {
+        if (vital == null || pipeline == null) {
+            throw new RpmsException("INVALID_INPUT", "Vital sign or pipeline cannot be null");
+        }
+        pipeline.submit(vital);
+    }
+
+    public Map<String, List<VitalSign>> uploadVitals(List<VitalSign> vitals, VitalsDatabase database) throws RpmsException {
+        if (vitals == null || database == null) {
+            throw new RpmsException("INVALID_INPUT", "Vital signs or database cannot be null");
+        }
+        for (VitalSign vital : vitals) {
+            if (vital == null || vital.getPatient() != this) {
+                throw new RpmsException("INVALID_INPUT", "Every vital sign must belong to patient " + getUserID());
+            }
+        }
+        return database.addAll(vitals);
+    }
+
     public void viewFeedback() {
         List<String> feedback = medicalHistory.getFeedbacks();
         if (feedback.isEmpty()) {
@@ -160,11 +237,11 @@ class Patient extends User {
         }
     }
 
-    public void scheduleAppointment(String appointmentID, LocalDateTime time, Doctor doctor, AppointmentManager manager) throws RpmsException {
+    public Appointment scheduleAppointment(String appointmentID, LocalDateTime time, Doctor doctor, AppointmentManager manager) throws RpmsException {
         if (appointmentID == null || time == null || doctor == null || manager == null) {
             throw new RpmsException("INVALID_INPUT", "Appointment details cannot be null");
         }
-        manager.requestAppointment(appointmentID, time, this, doctor);
+        return manager.requestAppointment(appointmentID, time, this, doctor);
     }
 
     public void sendMessage(String receiverID, String message) throws RpmsException {
@@ -187,8 +264,7 @@ class Patient extends User {
 
 class Doctor extends User {
     private LocalDate joiningDate;
-    private List<LocalDateTime> availableTime = new ArrayList<>();
-    private List<Appointment> appointments = new ArrayList<>();
+    private NavigableSet<LocalDateTime> availableTime = new ConcurrentSkipListSet<>();
 
     public Doctor(String userID, String userName, String contactInfo, String gender, LocalDate joiningDate) throws RpmsException {
         super(userID, userName, contactInfo, gender);
@@ -213,7 +289,8 @@ class Doctor extends User {
     }
 
     public LocalDate getJoiningDate() { return joiningDate; }
-    public List<LocalDateTime> getAvailableTime() { return Collections.unmodifiableList(availableTime); }
+    // Each entry opens one Appointment.DEFAULT_DURATION slot; adjacent entries form a continuous window.
+    public NavigableSet<LocalDateTime> getAvailableTime() { return Collections.unmodifiableNavigableSet(availableTime); }
 
     public void viewPatientVitals(String patientID, VitalsDatabase database) throws RpmsException {
         if (patientID == null || patientID.trim().isEmpty()) {
@@ -225,6 +302,10 @@ class Doctor extends User {
         VitalSign latest = database.getLatestVitalSign(patientID);
         if (latest != null) {
             System.out.println(latest);
+            int[] windows = database.getRollingWindows();
+            int widest = Arrays.stream(windows).max().getAsInt();
+            System.out.println("Trends over the last " + widest + " days:");
+            database.getRollingStats(patientID, widest).values().forEach(System.out::println);
         } else {
             System.out.println("No vitals found for patient " + patientID);
         }
@@ -246,19 +327,20 @@ class Doctor extends User {
         );
     }
 
-    public void manageAppointment(LocalDateTime time, Patient patient, AppointmentManager manager, String action, NotificationService notificationService) throws RpmsException {
+    public Appointment manageAppointment(LocalDateTime time, Patient patient, AppointmentManager manager, String action, NotificationService notificationService) throws RpmsException {
         if (time == null || patient == null || manager == null || action == null) {
             throw new RpmsException("INVALID_INPUT", "Appointment details cannot be null");
         }
+        Appointment appointment;
         if ("approve".equalsIgnoreCase(action)) {
-            manager.approveAppointment(time, patient, this);
+            appointment = manager.approveAppointment(time, patient, this);
             notificationService.sendEmailAlert(
                 patient.getContactInfo(),
                 "Appointment Approved",
                 "Your appointment with Dr. " + getName() + " on " + time + " has been approved."
             );
         } else if ("cancel".equalsIgnoreCase(action)) {
-            manager.cancelAppointment(time, patient, this);
+            appointment = manager.cancelAppointment(time, patient, this);
             notificationService.sendEmailAlert(
                 patient.getContactInfo(),
                 "Appointment Cancelled",
@@ -267,6 +349,7 @@ class Doctor extends User {
         } else {
             throw new RpmsException("INVALID_ACTION", "Action must be 'approve' or 'cancel'");
         }
+        return appointment;
     }
 
     public void receiveAlert(String message) {
@@ -345,6 +428,84 @@ class Administrator extends User {
     }
 }
 
+class UserRegistry {
+    private final Map<String, User> byId = new ConcurrentHashMap<>();
+    private final Map<String, User> byEmail = new ConcurrentHashMap<>();
+    // Role views keep registration order, so e.g. the first doctor registered is still the first one listed.
+    private final Map<String, Patient> patients = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, Doctor> doctors = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, Administrator> admins = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    // User IDs and contact emails are both unique; emails are compared case-insensitively.
+    public void register(User user) throws RpmsException {
+        if (user == null) {
+            throw new RpmsException("INVALID_INPUT", "User cannot be null");
+        }
+        if (byId.putIfAbsent(user.getUserID(), user) != null) {
+            throw new RpmsException("DUPLICATE_USER", "User ID already registered: " + user.getUserID());
+        }
+        if (byEmail.putIfAbsent(emailKey(user.getContactInfo()), user) != null) {
+            byId.remove(user.getUserID(), user);
+            throw new RpmsException("DUPLICATE_USER", "Contact email already registered: " + user.getContactInfo());
+        }
+        if (user instanceof Patient) {
+            patients.put(user.getUserID(), (Patient) user);
+        } else if (user instanceof Doctor) {
+            doctors.put(user.getUserID(), (Doctor) user);
+        } else if (user instanceof Administrator) {
+            admins.put(user.getUserID(), (Administrator) user);
+        }
+    }
+
+    public boolean remove(User user) {
+        if (user == null || !byId.remove(user.getUserID(), user)) {
+            return false;
+        }
+        byEmail.remove(emailKey(user.getContactInfo()), user);
+        patients.remove(user.getUserID(), user);
+        doctors.remove(user.getUserID(), user);
+        admins.remove(user.getUserID(), user);
+        return true;
+    }
+
+    public User find(String userID) {
+        return userID == null ? null : byId.get(userID);
+    }
+
+    public User findByEmail(String email) {
+        return email == null ? null : byEmail.get(emailKey(email));
+    }
+
+    // Returns null when the ID is unknown or belongs to a user of another role.
+    public <T extends User> T find(String userID, Class<T> role) {
+        User user = find(userID);
+        return role.isInstance(user) ? role.cast(user) : null;
+    }
+
+    public Patient findPatient(String userID) { return find(userID, Patient.class); }
+    public Doctor findDoctor(String userID) { return find(userID, Doctor.class); }
+    public Administrator findAdministrator(String userID) { return find(userID, Administrator.class); }
+
+    public Collection<Patient> getPatients() { return snapshot(patients); }
+    public Collection<Doctor> getDoctors() { return snapshot(doctors); }
+    public Collection<Administrator> getAdministrators() { return snapshot(admins); }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private static String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // A copy, so callers can iterate while other threads register or remove users.
+    private static <T extends User> List<T> snapshot(Map<String, T> role) {
+        synchronized (role) {
+            return new ArrayList<>(role.values());
+        }
+    }
+}
+
 // Health Data Handling Classes
 class VitalSign {
     private Patient patient;
@@ -402,285 +563,2071 @@ class VitalSign {
     }
 }
 
-class VitalsDatabase {
-    private List<VitalSign> vitalsList = new ArrayList<>();
+// A daily or weekly average produced by retention, never a reading a patient uploaded.
+class RolledUpVitalSign extends VitalSign {
+    private final LocalDate periodEnd;
+    private final long readingCount;
 
-    public void addVitalSign(VitalSign vital) throws RpmsException {
-        if (vital == null) {
-            throw new RpmsException("INVALID_INPUT", "Vital sign cannot be null");
-        }
-        vitalsList.add(vital);
+    public RolledUpVitalSign(Patient patient, double heartRate, double bloodPressure, double bodyTemperature, double oxygenLevel,
+                             LocalDate periodStart, LocalDate periodEnd, long readingCount) throws RpmsException {
+        super(patient, heartRate, bloodPressure, bodyTemperature, oxygenLevel, periodStart);
+        this.periodEnd = periodEnd;
+        this.readingCount = readingCount;
     }
 
-    public void removeVitalSign(VitalSign vital) throws RpmsException {
-        if (vital == null) {
-            throw new RpmsException("INVALID_INPUT", "Vital sign cannot be null");
-        }
-        vitalsList.remove(vital);
+    public LocalDate getPeriodStart() { return getCheckupDate(); }
+    public LocalDate getPeriodEnd() { return periodEnd; }
+    public long getReadingCount() { return readingCount; }
+
+    @Override
+    public String toString() {
+        return String.format("Patient: %s\nAverage of %d reading(s) from %s to %s\nHeart Rate: %.2f\nBlood Pressure: %.2f\nBody Temperature: %.2f\nOxygen Level: %.2f",
+                getPatient().getName(), readingCount, getPeriodStart(), periodEnd,
+                getHeartRate(), getBloodPressure(), getBodyTemperature(), getOxygenLevel());
     }
+}
 
-    public VitalSign getLatestVitalSign(String patientID) throws RpmsException {
-        if (patientID == null || patientID.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Patient ID cannot be null or empty");
-        }
-        VitalSign latest = null;
-        for (VitalSign v : vitalsList) {
-            if (v.getPatient().getUserID().equals(patientID)) {
-                if (latest == null || v.getCheckupDate().isAfter(latest.getCheckupDate())) {
-                    latest = v;
-                }
-            }
-        }
-        return latest;
+enum VitalField {
+    HEART_RATE("Heart Rate"),
+    BLOOD_PRESSURE("Blood Pressure"),
+    BODY_TEMPERATURE("Body Temperature"),
+    OXYGEN_LEVEL("Oxygen Level");
+
+    private final String label;
+
+    VitalField(String label) {
+        this.label = label;
     }
 
-    public List<VitalSign> getVitalSignHistory(String patientID) throws RpmsException {
-        if (patientID == null || patientID.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Patient ID cannot be null or empty");
-        }
-        List<VitalSign> history = new ArrayList<>();
-        for (VitalSign v : vitalsList) {
-            if (v.getPatient().getUserID().equals(patientID)) {
-                history.add(v);
-            }
+    public String getLabel() { return label; }
+
+    public double of(VitalSign vital) {
+        switch (this) {
+            case HEART_RATE: return vital.getHeartRate();
+            case BLOOD_PRESSURE: return vital.getBloodPressure();
+            case BODY_TEMPERATURE: return vital.getBodyTemperature();
+            default: return vital.getOxygenLevel();
         }
-        return history;
     }
 }
 
-// Appointment Scheduling Classes
-class Appointment {
-    private String appointmentID;
-    private LocalDateTime appointmentTime;
-    private Patient patient;
-    private Doctor doctor;
-    private String appointmentStatus;
+class VitalStatistics {
+    private final VitalField field;
+    private final int windowDays;
+    private final long count;
+    private final double mean;
+    private final double min;
+    private final double max;
+    private final double variance;
+    private final double ewma;
+
+    public VitalStatistics(VitalField field, int windowDays, long count, double mean, double min, double max, double variance, double ewma) {
+        this.field = field;
+        this.windowDays = windowDays;
+        this.count = count;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+        this.variance = variance;
+        this.ewma = ewma;
+    }
 
-    public Appointment(String appointmentID, LocalDateTime appointmentTime, Patient patient, Doctor doctor) throws RpmsException {
-        if (appointmentID == null || appointmentTime == null || patient == null || doctor == null) {
-            throw new RpmsException("INVALID_INPUT", "Appointment details cannot be null");
+    public VitalField getField() { return field; }
+    public int getWindowDays() { return windowDays; }
+    public long getCount() { return count; }
+    public double getMean() { return mean; }
+    public double getMin() { return min; }
+    public double getMax() { return max; }
+    public double getVariance() { return variance; }
+    public double getEwma() { return ewma; }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d days, %d readings): mean=%.2f min=%.2f max=%.2f variance=%.2f ewma=%.2f",
+                field.getLabel(), windowDays, count, mean, min, max, variance, ewma);
+    }
+}
+
+class RollingVitalStats {
+    private static final VitalField[] FIELD_VALUES = VitalField.values();
+    private static final int FIELDS = FIELD_VALUES.length;
+
+    private final int windowDays;
+    private final double alpha;
+    private final long[] bucketDays;
+    private final long[] bucketCounts;
+    // per-day Welford state, merged per query so no running total is ever subtracted back out
+    private final double[][] bucketMeans;
+    private final double[][] bucketM2s;
+    private final double[][] bucketMins;
+    private final double[][] bucketMaxs;
+    private final double[] ewmas = new double[FIELDS];
+    private boolean ewmaStarted;
+
+    public RollingVitalStats(int windowDays, double alpha) {
+        this.windowDays = windowDays;
+        this.alpha = alpha;
+        this.bucketDays = new long[windowDays];
+        this.bucketCounts = new long[windowDays];
+        this.bucketMeans = new double[FIELDS][windowDays];
+        this.bucketM2s = new double[FIELDS][windowDays];
+        this.bucketMins = new double[FIELDS][windowDays];
+        this.bucketMaxs = new double[FIELDS][windowDays];
+        Arrays.fill(bucketDays, Long.MIN_VALUE);
+    }
+
+    public int getWindowDays() { return windowDays; }
+
+    public synchronized void add(VitalSign vital) {
+        long day = vital.getCheckupDate().toEpochDay();
+        for (int f = 0; f < FIELDS; f++) {
+            double value = FIELD_VALUES[f].of(vital);
+            ewmas[f] = ewmaStarted ? alpha * value + (1 - alpha) * ewmas[f] : value;
         }
-        if (appointmentTime.isBefore(LocalDateTime.now())) {
-            throw new RpmsException("INVALID_DATE", "Appointment time cannot be in the past");
+        ewmaStarted = true;
+        int bucket = (int) Math.floorMod(day, (long) windowDays);
+        if (bucketDays[bucket] > day) {
+            // a newer day already owns this slot, so this reading is outside every window that slot can serve
+            return;
+        }
+        if (bucketDays[bucket] != day) {
+            bucketDays[bucket] = day;
+            bucketCounts[bucket] = 0;
+        }
+        long n = ++bucketCounts[bucket];
+        for (int f = 0; f < FIELDS; f++) {
+            double value = FIELD_VALUES[f].of(vital);
+            double delta = value - bucketMeans[f][bucket];
+            bucketMeans[f][bucket] = n == 1 ? value : bucketMeans[f][bucket] + delta / n;
+            bucketM2s[f][bucket] = n == 1 ? 0 : bucketM2s[f][bucket] + delta * (value - bucketMeans[f][bucket]);
+            bucketMins[f][bucket] = n == 1 ? value : Math.min(bucketMins[f][bucket], value);
+            bucketMaxs[f][bucket] = n == 1 ? value : Math.max(bucketMaxs[f][bucket], value);
         }
-        this.appointmentID = appointmentID;
-        this.appointmentTime = appointmentTime;
-        this.patient = patient;
-        this.doctor = doctor;
-        this.appointmentStatus = "Pending";
     }
 
-    public String getAppointmentID() { return appointmentID; }
-    public LocalDateTime getAppointmentTime() { return appointmentTime; }
-    public Patient getPatient() { return patient; }
-    public Doctor getDoctor() { return doctor; }
-    public String getAppointmentStatus() { return appointmentStatus; }
+    public VitalStatistics get(VitalField field) {
+        return get(field, LocalDate.now().toEpochDay());
+    }
 
-    public void setAppointmentID(String appointmentID) throws RpmsException {
-        if (appointmentID == null || appointmentID.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Appointment ID cannot be null or empty");
+    // The window is the windowDays ending today, so a patient who stopped uploading ages out of it.
+    public synchronized VitalStatistics get(VitalField field, long today) {
+        int f = field.ordinal();
+        long count = 0;
+        double mean = 0;
+        double m2 = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int b = 0; b < windowDays; b++) {
+            if (bucketCounts[b] == 0 || bucketDays[b] > today || bucketDays[b] <= today - windowDays) {
+                continue;
+            }
+            long n = bucketCounts[b];
+            double delta = bucketMeans[f][b] - mean;
+            long merged = count + n;
+            mean += delta * n / merged;
+            m2 += bucketM2s[f][b] + delta * delta * count * n / merged;
+            count = merged;
+            min = Math.min(min, bucketMins[f][b]);
+            max = Math.max(max, bucketMaxs[f][b]);
         }
-        this.appointmentID = appointmentID;
+        if (count == 0) {
+            return new VitalStatistics(field, windowDays, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN,
+                    ewmaStarted ? ewmas[f] : Double.NaN);
+        }
+        return new VitalStatistics(field, windowDays, count, mean, min, max, m2 / count, ewmas[f]);
     }
+}
 
-    public void setAppointmentTime(LocalDateTime appointmentTime) throws RpmsException {
-        if (appointmentTime == null || appointmentTime.isBefore(LocalDateTime.now())) {
-            throw new RpmsException("INVALID_DATE", "Appointment time cannot be in the past");
-        }
-        this.appointmentTime = appointmentTime;
+enum VitalsStorageMode {
+    OBJECT,
+    COLUMNAR,
+    ARCHIVE
+}
+
+// Readings come back ordered by checkup date; readings sharing a date keep the order they were added in.
+// latest() is the first reading added on the most recent date, which is what the original list scan returned.
+interface VitalsSeries {
+    void add(VitalSign vital) throws RpmsException;
+    boolean remove(VitalSign vital) throws RpmsException;
+    int size();
+    VitalSign latest() throws RpmsException;
+    List<VitalSign> history() throws RpmsException;
+    List<VitalSign> range(LocalDate from, LocalDate to) throws RpmsException;
+    List<VitalSign> evictBefore(LocalDate cutoff) throws RpmsException;
+    long estimatedBytes();
+}
+
+class ObjectVitalsSeries implements VitalsSeries {
+    // VitalSign (12 header + 32 doubles + 2 refs + padding) + LocalDate (24) + list slot (4)
+    static final long BYTES_PER_READING = 56 + 24 + 4;
+
+    // one bucket per checkup day, so a late upload only touches its own day instead of shifting the tail
+    private final TreeMap<Long, List<VitalSign>> days = new TreeMap<>();
+    private int size;
+
+    @Override
+    public synchronized void add(VitalSign vital) {
+        days.computeIfAbsent(vital.getCheckupDate().toEpochDay(), day -> new ArrayList<>()).add(vital);
+        size++;
     }
 
-    public void setPatient(Patient patient) throws RpmsException {
-        if (patient == null) {
-            throw new RpmsException("INVALID_INPUT", "Patient cannot be null");
+    @Override
+    public synchronized boolean remove(VitalSign vital) {
+        Long day = vital.getCheckupDate().toEpochDay();
+        List<VitalSign> bucket = days.get(day);
+        if (bucket == null || !bucket.remove(vital)) {
+            return false;
         }
-        this.patient = patient;
+        if (bucket.isEmpty()) {
+            days.remove(day);
+        }
+        size--;
+        return true;
     }
 
-    public void setDoctor(Doctor doctor) throws RpmsException {
-        if (doctor == null) {
-            throw new RpmsException("INVALID_INPUT", "Doctor cannot be null");
-        }
-        this.doctor = doctor;
+    @Override
+    public synchronized int size() {
+        return size;
     }
 
-    public void setAppointmentStatus(String appointmentStatus) throws RpmsException {
-        if (appointmentStatus == null || appointmentStatus.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Appointment status cannot be null or empty");
-        }
-        this.appointmentStatus = appointmentStatus;
+    @Override
+    public synchronized VitalSign latest() {
+        return days.isEmpty() ? null : days.lastEntry().getValue().get(0);
     }
 
     @Override
-    public String toString() {
-        return String.format("\nAppointment ID: %s\nAppointment Time: %s\nPatient: %s\nDoctor: %s\nStatus: %s",
-                appointmentID, appointmentTime, patient.getName(), doctor.getName(), appointmentStatus);
+    public synchronized List<VitalSign> history() {
+        return flatten(days);
     }
-}
 
-class AppointmentManager {
-    private List<Appointment> appointments = new ArrayList<>();
+    @Override
+    public synchronized List<VitalSign> range(LocalDate from, LocalDate to) {
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        return fromDay > toDay ? new ArrayList<>() : flatten(days.subMap(fromDay, true, toDay, true));
+    }
+
+    @Override
+    public synchronized List<VitalSign> evictBefore(LocalDate cutoff) {
+        SortedMap<Long, List<VitalSign>> head = days.headMap(cutoff.toEpochDay());
+        List<VitalSign> evicted = flatten(head);
+        head.clear();
+        size -= evicted.size();
+        return evicted;
+    }
 
-    public void requestAppointment(String appointmentID, LocalDateTime time, Patient patient, Doctor doctor) throws RpmsException {
-        Appointment appointment = new Appointment(appointmentID, time, patient, doctor);
-        appointments.add(appointment);
-        System.out.println("Appointment requested: " + appointment);
+    @Override
+    public synchronized long estimatedBytes() {
+        return size * BYTES_PER_READING;
     }
 
-    public void approveAppointment(LocalDateTime time, Patient patient, Doctor doctor) throws RpmsException {
-        for (Appointment a : appointments) {
-            if (a.getAppointmentTime().equals(time) && a.getPatient().equals(patient) && a.getDoctor().equals(doctor)) {
-                a.setAppointmentStatus("Approved");
-                System.out.println("Appointment approved: " + a);
-                return;
-            }
+    private static List<VitalSign> flatten(Map<Long, List<VitalSign>> buckets) {
+        List<VitalSign> result = new ArrayList<>();
+        for (List<VitalSign> bucket : buckets.values()) {
+            result.addAll(bucket);
         }
-        throw new RpmsException("APPOINTMENT_NOT_FOUND", "Appointment not found");
+        return result;
     }
+}
 
-    public void cancelAppointment(LocalDateTime time, Patient patient, Doctor doctor) throws RpmsException {
-        for (Appointment a : appointments) {
-            if (a.getAppointmentTime().equals(time) && a.getPatient().equals(patient) && a.getDoctor().equals(doctor)) {
-                a.setAppointmentStatus("Cancelled");
-                System.out.println("Appointment cancelled: " + a);
-                return;
-            }
+// Readings kept in date order in blocks of at most BLOCK_SIZE slots, each block holding its own epoch days
+// and per-slot columns. An out-of-order insert shifts the tail of one block (or splits it) instead of
+// the whole series, while in-order appends still fill blocks completely. A position packs the block
+// number into the high half and the slot into the low half, so positions compare in series order.
+abstract class DayBlocks<C> {
+    static final int BLOCK_SIZE = 512;
+    private static final int INITIAL_CAPACITY = 16;
+    static final long START = 0;
+
+    private static final class Block<C> {
+        int[] epochDays;
+        C columns;
+        int size;
+
+        Block(int[] epochDays, C columns) {
+            this.epochDays = epochDays;
+            this.columns = columns;
         }
-        throw new RpmsException("APPOINTMENT_NOT_FOUND", "Appointment not found");
     }
 
-    public List<Appointment> getAppointments() {
-        return new ArrayList<>(appointments);
+    private final List<Block<C>> blocks = new ArrayList<>();
+    private int size;
+    private long capacity;
+
+    protected abstract C allocate(int capacity);
+
+    protected abstract void copy(C from, int fromSlot, C to, int toSlot, int length);
+
+    public int size() {
+        return size;
     }
-}
 
-// Doctor-Patient Interaction Classes
-class Feedback {
-    private Patient patient;
-    private Doctor doctor;
-    private LocalDate date;
-    private String comments;
+    public int blockCount() {
+        return blocks.size();
+    }
 
-    public Feedback(Patient patient, Doctor doctor, LocalDate date, String comments) throws RpmsException {
-        if (patient == null || doctor == null || date == null || comments == null || comments.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Feedback details cannot be null or empty");
-        }
-        if (date.isAfter(LocalDate.now())) {
-            throw new RpmsException("INVALID_DATE", "Feedback date cannot be in the future");
-        }
-        this.patient = patient;
-        this.doctor = doctor;
-        this.date = date;
-        this.comments = comments;
+    public long capacity() {
+        return capacity;
     }
 
-    public String getComments() { return comments; }
-    public LocalDate getDate() { return date; }
+    public long end() {
+        return position(blocks.size(), 0);
+    }
 
-    public void setComments(String comments) throws RpmsException {
-        if (comments == null || comments.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Comments cannot be null or empty");
-        }
-        this.comments = comments;
+    public int lastDay() {
+        Block<C> last = blocks.get(blocks.size() - 1);
+        return last.epochDays[last.size - 1];
     }
 
-    public void setDate(LocalDate date) throws RpmsException {
-        if (date == null || date.isAfter(LocalDate.now())) {
-            throw new RpmsException("INVALID_DATE", "Feedback date cannot be in the future");
-        }
-        this.date = date;
+    public static int slot(long position) {
+        return (int) position;
     }
 
-    @Override
-    public String toString() {
-        return String.format("Feedback from Dr. %s on %s: %s", doctor.getName(), date, comments);
+    public C columns(long position) {
+        return blocks.get(block(position)).columns;
     }
-}
 
-class Prescription {
-    private String prescriptionID;
-    private Patient patient;
-    private String medication;
-    private String dosage;
-    private String schedule;
+    public int dayAt(long position) {
+        return blocks.get(block(position)).epochDays[slot(position)];
+    }
 
-    public Prescription(String prescriptionID, Patient patient, String medication, String dosage, String schedule) throws RpmsException {
-        if (prescriptionID == null || patient == null || medication == null || dosage == null || schedule == null ||
-            prescriptionID.trim().isEmpty() || medication.trim().isEmpty() || dosage.trim().isEmpty() || schedule.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Prescription details cannot be null or empty");
-        }
-        this.prescriptionID = prescriptionID;
-        this.patient = patient;
-        this.medication = medication;
-        this.dosage = dosage;
-        this.schedule = schedule;
+    public long next(long position) {
+        int block = block(position);
+        int slot = slot(position) + 1;
+        return slot == blocks.get(block).size ? position(block + 1, 0) : position(block, slot);
     }
 
-    public String getPrescriptionID() { return prescriptionID; }
-    public Patient getPatient() { return patient; }
-    public String getMedication() { return medication; }
-    public String getDosage() { return dosage; }
-    public String getSchedule() { return schedule; }
+    // Position of the first reading on or after the given day.
+    public long lowerBound(long epochDay) {
+        return bound(epochDay, false);
+    }
 
-    public void setPrescriptionID(String prescriptionID) throws RpmsException {
-        if (prescriptionID == null || prescriptionID.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Prescription ID cannot be null or empty");
-        }
-        this.prescriptionID = prescriptionID;
+    // Position just past the last reading on or before the given day.
+    public long upperBound(long epochDay) {
+        return bound(epochDay, true);
     }
 
-    public void setPatient(Patient patient) throws RpmsException {
-        if (patient == null) {
-            throw new RpmsException("INVALID_INPUT", "Patient cannot be null");
+    // Makes room for a reading after any already stored on the same day and returns its position;
+    // the caller fills in the columns at that slot.
+    public long insert(int epochDay) {
+        long at = upperBound(epochDay);
+        int index = block(at);
+        int slot = slot(at);
+        if (blocks.isEmpty()) {
+            blocks.add(newBlock(INITIAL_CAPACITY));
+        } else if (slot == 0 && index > 0) {
+            // append to the earlier block rather than push into the front of the next one
+            index--;
+            slot = blocks.get(index).size;
         }
-        this.patient = patient;
+        Block<C> block = blocks.get(index);
+        if (block.size == BLOCK_SIZE) {
+            if (slot == 0 || slot == BLOCK_SIZE) {
+                index = slot == 0 ? index : index + 1;
+                block = newBlock(INITIAL_CAPACITY);
+                blocks.add(index, block);
+                slot = 0;
+            } else {
+                int half = BLOCK_SIZE / 2;
+                Block<C> upper = newBlock(BLOCK_SIZE);
+                System.arraycopy(block.epochDays, half, upper.epochDays, 0, half);
+                copy(block.columns, half, upper.columns, 0, half);
+                upper.size = half;
+                block.size = half;
+                blocks.add(index + 1, upper);
+                if (slot > half) {
+                    index++;
+                    slot -= half;
+                    block = upper;
+                }
+            }
+        } else if (block.size == block.epochDays.length) {
+            grow(block);
+        }
+        int tail = block.size - slot;
+        System.arraycopy(block.epochDays, slot, block.epochDays, slot + 1, tail);
+        copy(block.columns, slot, block.columns, slot + 1, tail);
+        block.epochDays[slot] = epochDay;
+        block.size++;
+        size++;
+        return position(index, slot);
     }
 
-    public void setMedication(String medication) throws RpmsException {
-        if (medication == null || medication.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Medication cannot be null or empty");
+    public void remove(long position) {
+        int index = block(position);
+        int slot = slot(position);
+        Block<C> block = blocks.get(index);
+        int tail = block.size - slot - 1;
+        System.arraycopy(block.epochDays, slot + 1, block.epochDays, slot, tail);
+        copy(block.columns, slot + 1, block.columns, slot, tail);
+        block.size--;
+        size--;
+        if (block.size == 0) {
+            blocks.remove(index);
+            capacity -= block.epochDays.length;
         }
-        this.medication = medication;
     }
 
-    public void setDosage(String dosage) throws RpmsException {
-        if (dosage == null || dosage.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Dosage cannot be null or empty");
+    // Drops every reading before the position; whole blocks go at once, only the last one is shifted.
+    public void removeBefore(long position) {
+        int index = block(position);
+        int slot = slot(position);
+        for (Block<C> dropped : blocks.subList(0, index)) {
+            size -= dropped.size;
+            capacity -= dropped.epochDays.length;
+        }
+        blocks.subList(0, index).clear();
+        if (slot > 0) {
+            Block<C> first = blocks.get(0);
+            int tail = first.size - slot;
+            System.arraycopy(first.epochDays, slot, first.epochDays, 0, tail);
+            copy(first.columns, slot, first.columns, 0, tail);
+            first.size = tail;
+            size -= slot;
         }
-        this.dosage = dosage;
     }
 
-    public void setSchedule(String schedule) throws RpmsException {
-        if (schedule == null || schedule.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Schedule cannot be null or empty");
+    private long bound(long epochDay, boolean after) {
+        int lo = 0, hi = blocks.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Block<C> block = blocks.get(mid);
+            int last = block.epochDays[block.size - 1];
+            if (last < epochDay || (after && last == epochDay)) lo = mid + 1; else hi = mid;
         }
-        this.schedule = schedule;
+        if (lo == blocks.size()) {
+            return end();
+        }
+        Block<C> block = blocks.get(lo);
+        int index = lo;
+        lo = 0;
+        hi = block.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int day = block.epochDays[mid];
+            if (day < epochDay || (after && day == epochDay)) lo = mid + 1; else hi = mid;
+        }
+        return position(index, lo);
     }
 
-    @Override
-    public String toString() {
-        return String.format("Prescription ID: %s\nPatient: %s\nMedication: %s\nDosage: %s\nSchedule: %s",
-                prescriptionID, patient.getName(), medication, dosage, schedule);
+    private Block<C> newBlock(int slots) {
+        capacity += slots;
+        return new Block<>(new int[slots], allocate(slots));
     }
-}
 
-class MedicalHistory {
-    private Patient patient;
-    private List<String> feedbacks = new ArrayList<>();
-    private List<Prescription> prescriptions = new ArrayList<>();
+    private void grow(Block<C> block) {
+        int slots = Math.min(BLOCK_SIZE, block.epochDays.length * 2);
+        C columns = allocate(slots);
+        copy(block.columns, 0, columns, 0, block.size);
+        capacity += slots - block.epochDays.length;
+        block.epochDays = Arrays.copyOf(block.epochDays, slots);
+        block.columns = columns;
+    }
 
-    public MedicalHistory(Patient patient) throws RpmsException {
-        if (patient == null) {
-            throw new RpmsException("INVALID_INPUT", "Patient cannot be null");
-        }
-        this.patient = patient;
+    private static int block(long position) {
+        return (int) (position >>> 32);
     }
 
-    public void addFeedback(String feedback) throws RpmsException {
-        if (feedback == null || feedback.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "Feedback cannot be null or empty");
-        }
-        feedbacks.add(feedback);
+    private static long position(int block, int slot) {
+        return (long) block << 32 | slot;
+    }
+}
+
+class ColumnarVitalsSeries implements VitalsSeries {
+    private static final int HEART_RATE = 0;
+    private static final int BLOOD_PRESSURE = 1;
+    private static final int BODY_TEMPERATURE = 2;
+    private static final int OXYGEN_LEVEL = 3;
+
+    private static final class ColumnBlocks extends DayBlocks<double[][]> {
+        @Override
+        protected double[][] allocate(int capacity) {
+            return new double[4][capacity];
+        }
+
+        @Override
+        protected void copy(double[][] from, int fromSlot, double[][] to, int toSlot, int length) {
+            for (int column = 0; column < from.length; column++) {
+                System.arraycopy(from[column], fromSlot, to[column], toSlot, length);
+            }
+        }
+    }
+
+    private final ColumnBlocks readings = new ColumnBlocks();
+    private Patient patient;
+    private volatile VitalSign latest;
+
+    @Override
+    public synchronized void add(VitalSign vital) {
+        patient = vital.getPatient();
+        int epochDay = (int) vital.getCheckupDate().toEpochDay();
+        boolean newestDay = readings.size() == 0 || epochDay > readings.lastDay();
+        long position = readings.insert(epochDay);
+        double[][] columns = readings.columns(position);
+        int slot = DayBlocks.slot(position);
+        columns[HEART_RATE][slot] = vital.getHeartRate();
+        columns[BLOOD_PRESSURE][slot] = vital.getBloodPressure();
+        columns[BODY_TEMPERATURE][slot] = vital.getBodyTemperature();
+        columns[OXYGEN_LEVEL][slot] = vital.getOxygenLevel();
+        if (newestDay) {
+            latest = vital;
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(VitalSign vital) {
+        int epochDay = (int) vital.getCheckupDate().toEpochDay();
+        long end = readings.end();
+        for (long p = readings.lowerBound(epochDay); p < end && readings.dayAt(p) == epochDay; p = readings.next(p)) {
+            double[][] columns = readings.columns(p);
+            int slot = DayBlocks.slot(p);
+            if (columns[HEART_RATE][slot] == vital.getHeartRate() && columns[BLOOD_PRESSURE][slot] == vital.getBloodPressure() &&
+                columns[BODY_TEMPERATURE][slot] == vital.getBodyTemperature() && columns[OXYGEN_LEVEL][slot] == vital.getOxygenLevel()) {
+                readings.remove(p);
+                latest = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized int size() {
+        return readings.size();
+    }
+
+    @Override
+    public VitalSign latest() throws RpmsException {
+        VitalSign current = latest;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (latest == null && readings.size() > 0) {
+                long position = readings.lowerBound(readings.lastDay());
+                latest = view(readings.columns(position), DayBlocks.slot(position), readings.lastDay());
+            }
+            return latest;
+        }
+    }
+
+    @Override
+    public synchronized List<VitalSign> history() throws RpmsException {
+        return views(DayBlocks.START, readings.end());
+    }
+
+    @Override
+    public synchronized List<VitalSign> range(LocalDate from, LocalDate to) throws RpmsException {
+        return views(readings.lowerBound(from.toEpochDay()), readings.upperBound(to.toEpochDay()));
+    }
+
+    @Override
+    public synchronized List<VitalSign> evictBefore(LocalDate cutoff) throws RpmsException {
+        long end = readings.lowerBound(cutoff.toEpochDay());
+        List<VitalSign> evicted = views(DayBlocks.START, end);
+        readings.removeBefore(end);
+        if (readings.size() == 0) {
+            latest = null;
+        }
+        return evicted;
+    }
+
+    @Override
+    public synchronized long estimatedBytes() {
+        // per block: six array headers, the block object and its list slot; per allocated slot: 4 doubles and one int
+        return readings.blockCount() * (6 * 16L + 24 + 4) + readings.capacity() * (4 * Double.BYTES + Integer.BYTES);
+    }
+
+    private VitalSign view(double[][] columns, int slot, int epochDay) throws RpmsException {
+        return new VitalSign(patient, columns[HEART_RATE][slot], columns[BLOOD_PRESSURE][slot], columns[BODY_TEMPERATURE][slot],
+                columns[OXYGEN_LEVEL][slot], LocalDate.ofEpochDay(epochDay));
+    }
+
+    private List<VitalSign> views(long from, long to) throws RpmsException {
+        List<VitalSign> result = new ArrayList<>();
+        for (long p = from; p < to; p = readings.next(p)) {
+            result.add(view(readings.columns(p), DayBlocks.slot(p), readings.dayAt(p)));
+        }
+        return result;
+    }
+}
+
+class VitalsArchive implements AutoCloseable {
+    private static final int MAGIC = 0x52504D53;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int COUNT_OFFSET = 8;
+    private static final int PATIENT_ID_BYTES = 32;
+    private static final int FLAGS_OFFSET = 1 + PATIENT_ID_BYTES;
+    private static final int EPOCH_DAY_OFFSET = 36;
+    private static final int VALUES_OFFSET = 40;
+    private static final int RECORD_BYTES = VALUES_OFFSET + 4 * Double.BYTES;
+    private static final int INITIAL_RECORDS = 1024;
+    private static final byte FLAG_REMOVED = 1;
+    // group commit: msync once per batch of appends (or once a second) instead of on every reading
+    private static final int SYNC_BATCH = 64;
+    private static final long SYNC_INTERVAL_MS = 1000;
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int count;
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int unsynced;
+    private long lastSync = System.currentTimeMillis();
+
+    public VitalsArchive(Path file) throws RpmsException {
+        if (file == null) {
+            throw new RpmsException("INVALID_INPUT", "Archive file cannot be null");
+        }
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RpmsException("ARCHIVE_ERROR", "Failed to open vitals archive " + file, e);
+        }
+        try {
+            long existing = channel.size();
+            map(Math.max(existing, HEADER_BYTES + (long) INITIAL_RECORDS * RECORD_BYTES));
+            if (existing < HEADER_BYTES) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(COUNT_OFFSET, 0);
+                buffer.force(0, HEADER_BYTES);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new RpmsException("ARCHIVE_ERROR", "Not a vitals archive: " + file);
+            }
+            this.count = recoverCount((int) buffer.getLong(COUNT_OFFSET));
+        } catch (IOException | RpmsException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            if (e instanceof RpmsException) {
+                throw (RpmsException) e;
+            }
+            throw new RpmsException("ARCHIVE_ERROR", "Failed to open vitals archive " + file, e);
+        }
+    }
+
+    public Path getFile() { return file; }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public static void checkArchivable(VitalSign vital) throws RpmsException {
+        if (vital.getPatient().getUserID().getBytes(StandardCharsets.UTF_8).length > PATIENT_ID_BYTES) {
+            throw new RpmsException("INVALID_INPUT", "Patient ID is too long to archive");
+        }
+    }
+
+    public synchronized int append(VitalSign vital) throws RpmsException {
+        checkArchivable(vital);
+        byte[] id = vital.getPatient().getUserID().getBytes(StandardCharsets.UTF_8);
+        int offset = HEADER_BYTES + count * RECORD_BYTES;
+        try {
+            if (offset + RECORD_BYTES > buffer.capacity()) {
+                map(Math.min(Integer.MAX_VALUE, (long) buffer.capacity() * 2));
+                if (offset + RECORD_BYTES > buffer.capacity()) {
+                    throw new RpmsException("ARCHIVE_FULL", "Vitals archive has reached its maximum size");
+                }
+            }
+        } catch (IOException e) {
+            throw new RpmsException("ARCHIVE_ERROR", "Failed to grow vitals archive", e);
+        }
+        buffer.put(offset, (byte) id.length);
+        buffer.put(offset + 1, id);
+        buffer.put(offset + FLAGS_OFFSET, (byte) 0);
+        buffer.putInt(offset + EPOCH_DAY_OFFSET, (int) vital.getCheckupDate().toEpochDay());
+        buffer.putDouble(offset + VALUES_OFFSET, vital.getHeartRate());
+        buffer.putDouble(offset + VALUES_OFFSET + 8, vital.getBloodPressure());
+        buffer.putDouble(offset + VALUES_OFFSET + 16, vital.getBodyTemperature());
+        buffer.putDouble(offset + VALUES_OFFSET + 24, vital.getOxygenLevel());
+        buffer.putLong(COUNT_OFFSET, count + 1);
+        dirtyFrom = Math.min(dirtyFrom, offset);
+        int record = count++;
+        if (++unsynced >= SYNC_BATCH || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL_MS) {
+            sync();
+        }
+        return record;
+    }
+
+    public synchronized void markRemoved(int index) {
+        int offset = recordOffset(index);
+        buffer.put(offset + FLAGS_OFFSET, FLAG_REMOVED);
+        dirtyFrom = Math.min(dirtyFrom, offset);
+    }
+
+    // Writes already sit in the page cache, so a crashed process loses nothing; this covers a crashed host.
+    // Records are flushed before the header so a persisted count never runs ahead of the data it counts.
+    public synchronized void sync() {
+        int end = recordOffset(count);
+        if (dirtyFrom < end) {
+            buffer.force(dirtyFrom, end - dirtyFrom);
+        }
+        buffer.force(0, HEADER_BYTES);
+        dirtyFrom = Integer.MAX_VALUE;
+        unsynced = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    public synchronized boolean isRemoved(int index) {
+        return buffer.get(recordOffset(index) + FLAGS_OFFSET) == FLAG_REMOVED;
+    }
+
+    public synchronized String patientIdAt(int index) {
+        int offset = recordOffset(index);
+        byte[] id = new byte[buffer.get(offset)];
+        buffer.get(offset + 1, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    public synchronized int epochDayAt(int index) {
+        return buffer.getInt(recordOffset(index) + EPOCH_DAY_OFFSET);
+    }
+
+    public synchronized boolean matches(int index, VitalSign vital) {
+        int offset = recordOffset(index) + VALUES_OFFSET;
+        return buffer.getDouble(offset) == vital.getHeartRate() &&
+               buffer.getDouble(offset + 8) == vital.getBloodPressure() &&
+               buffer.getDouble(offset + 16) == vital.getBodyTemperature() &&
+               buffer.getDouble(offset + 24) == vital.getOxygenLevel();
+    }
+
+    public synchronized VitalSign read(int index, Patient patient) throws RpmsException {
+        int offset = recordOffset(index);
+        return new VitalSign(patient,
+                buffer.getDouble(offset + VALUES_OFFSET),
+                buffer.getDouble(offset + VALUES_OFFSET + 8),
+                buffer.getDouble(offset + VALUES_OFFSET + 16),
+                buffer.getDouble(offset + VALUES_OFFSET + 24),
+                LocalDate.ofEpochDay(buffer.getInt(offset + EPOCH_DAY_OFFSET)));
+    }
+
+    @Override
+    public synchronized void close() throws RpmsException {
+        try {
+            sync();
+            channel.close();
+        } catch (IOException e) {
+            throw new RpmsException("ARCHIVE_ERROR", "Failed to close vitals archive " + file, e);
+        }
+    }
+
+    private int recordOffset(int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    // A host crash between group commits can persist the header but not the trailing records;
+    // those read back as empty patient IDs and are dropped.
+    private int recoverCount(int persisted) {
+        int recovered = Math.min(persisted, (buffer.capacity() - HEADER_BYTES) / RECORD_BYTES);
+        while (recovered > 0 && buffer.get(recordOffset(recovered - 1)) == 0) {
+            recovered--;
+        }
+        if (recovered != persisted) {
+            buffer.putLong(COUNT_OFFSET, recovered);
+            buffer.force(0, HEADER_BYTES);
+        }
+        return recovered;
+    }
+
+    private void map(long size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+}
+
+class ArchivedVitalsSeries implements VitalsSeries {
+    // the in-memory index: archive record numbers in checkup-date order
+    private static final class RecordBlocks extends DayBlocks<int[]> {
+        @Override
+        protected int[] allocate(int capacity) {
+            return new int[capacity];
+        }
+
+        @Override
+        protected void copy(int[] from, int fromSlot, int[] to, int toSlot, int length) {
+            System.arraycopy(from, fromSlot, to, toSlot, length);
+        }
+    }
+
+    private final VitalsArchive archive;
+    private final String patientID;
+    private final Function<String, Patient> patientResolver;
+    private final RecordBlocks records = new RecordBlocks();
+    private Patient patient;
+    private volatile VitalSign latest;
+
+    public ArchivedVitalsSeries(VitalsArchive archive, String patientID, Function<String, Patient> patientResolver) {
+        this.archive = archive;
+        this.patientID = patientID;
+        this.patientResolver = patientResolver;
+    }
+
+    @Override
+    public synchronized void add(VitalSign vital) throws RpmsException {
+        int record = archive.append(vital);
+        patient = vital.getPatient();
+        int epochDay = (int) vital.getCheckupDate().toEpochDay();
+        boolean newestDay = records.size() == 0 || epochDay > records.lastDay();
+        index(record, epochDay);
+        if (newestDay) {
+            latest = vital;
+        }
+    }
+
+    public synchronized void index(int record, int epochDay) {
+        long position = records.insert(epochDay);
+        records.columns(position)[DayBlocks.slot(position)] = record;
+    }
+
+    @Override
+    public synchronized boolean remove(VitalSign vital) {
+        int epochDay = (int) vital.getCheckupDate().toEpochDay();
+        long end = records.end();
+        for (long p = records.lowerBound(epochDay); p < end && records.dayAt(p) == epochDay; p = records.next(p)) {
+            int record = records.columns(p)[DayBlocks.slot(p)];
+            if (archive.matches(record, vital)) {
+                archive.markRemoved(record);
+                records.remove(p);
+                latest = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized int size() {
+        return records.size();
+    }
+
+    @Override
+    public VitalSign latest() throws RpmsException {
+        VitalSign current = latest;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (latest == null && records.size() > 0) {
+                long position = records.lowerBound(records.lastDay());
+                latest = archive.read(records.columns(position)[DayBlocks.slot(position)], resolvePatient());
+            }
+            return latest;
+        }
+    }
+
+    @Override
+    public synchronized List<VitalSign> history() throws RpmsException {
+        return read(DayBlocks.START, records.end());
+    }
+
+    @Override
+    public synchronized List<VitalSign> range(LocalDate from, LocalDate to) throws RpmsException {
+        return read(records.lowerBound(from.toEpochDay()), records.upperBound(to.toEpochDay()));
+    }
+
+    // Only the in-memory index is trimmed; the archive keeps every raw reading, so the rollups
+    // are rebuilt from it when the patient's retention next runs after a restart.
+    @Override
+    public synchronized List<VitalSign> evictBefore(LocalDate cutoff) throws RpmsException {
+        long end = records.lowerBound(cutoff.toEpochDay());
+        List<VitalSign> evicted = read(DayBlocks.START, end);
+        records.removeBefore(end);
+        if (records.size() == 0) {
+            latest = null;
+        }
+        return evicted;
+    }
+
+    @Override
+    public synchronized long estimatedBytes() {
+        // per block: two array headers, the block object and its list slot; per allocated slot: two ints
+        return records.blockCount() * (2 * 16L + 24 + 4) + records.capacity() * 2 * Integer.BYTES;
+    }
+
+    private List<VitalSign> read(long from, long to) throws RpmsException {
+        List<VitalSign> result = new ArrayList<>();
+        if (from >= to) {
+            return result;
+        }
+        Patient owner = resolvePatient();
+        for (long p = from; p < to; p = records.next(p)) {
+            result.add(archive.read(records.columns(p)[DayBlocks.slot(p)], owner));
+        }
+        return result;
+    }
+
+    private Patient resolvePatient() throws RpmsException {
+        if (patient == null && patientResolver != null) {
+            patient = patientResolver.apply(patientID);
+        }
+        if (patient == null) {
+            throw new RpmsException("PATIENT_NOT_FOUND", "Archived vitals belong to unknown patient " + patientID);
+        }
+        return patient;
+    }
+}
+
+class VitalsRetentionPolicy {
+    private final int rawDays;
+    private final int dailyDays;
+    private final int weeklyWeeks;
+
+    public VitalsRetentionPolicy(int rawDays, int dailyDays, int weeklyWeeks) throws RpmsException {
+        if (rawDays <= 0 || dailyDays <= 0 || weeklyWeeks <= 0) {
+            throw new RpmsException("INVALID_INPUT", "Retention tiers must cover a positive number of days and weeks");
+        }
+        this.rawDays = rawDays;
+        this.dailyDays = dailyDays;
+        this.weeklyWeeks = weeklyWeeks;
+    }
+
+    public int getRawDays() { return rawDays; }
+    public int getDailyDays() { return dailyDays; }
+    public int getWeeklyWeeks() { return weeklyWeeks; }
+
+    @Override
+    public String toString() {
+        return String.format("Raw: %d days, Daily: %d days, Weekly: %d weeks", rawDays, dailyDays, weeklyWeeks);
+    }
+}
+
+class VitalsRollup {
+    private final long startDay;
+    private final double[] sums = new double[4];
+    private long count;
+
+    public VitalsRollup(long startDay) {
+        this.startDay = startDay;
+    }
+
+    public long getStartDay() { return startDay; }
+    public long getCount() { return count; }
+
+    public void add(VitalSign vital) {
+        sums[0] += vital.getHeartRate();
+        sums[1] += vital.getBloodPressure();
+        sums[2] += vital.getBodyTemperature();
+        sums[3] += vital.getOxygenLevel();
+        count++;
+    }
+
+    public void merge(VitalsRollup other) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] += other.sums[i];
+        }
+        count += other.count;
+    }
+
+    public RolledUpVitalSign toVitalSign(Patient patient, int periodDays) throws RpmsException {
+        return new RolledUpVitalSign(patient, sums[0] / count, sums[1] / count, sums[2] / count, sums[3] / count,
+                LocalDate.ofEpochDay(startDay), LocalDate.ofEpochDay(startDay + periodDays - 1), count);
+    }
+}
+
+class VitalsRollupTiers {
+    // bucket objects plus their TreeMap entries and boxed keys
+    private static final long BYTES_PER_ROLLUP = 32 + 48 + 40 + 16;
+
+    private final TreeMap<Long, VitalsRollup> daily = new TreeMap<>();
+    private final TreeMap<Long, VitalsRollup> weekly = new TreeMap<>();
+    private Patient patient;
+
+    public synchronized void absorb(List<VitalSign> evicted, long latestDay, VitalsRetentionPolicy policy) {
+        for (VitalSign vital : evicted) {
+            patient = vital.getPatient();
+            daily.computeIfAbsent(vital.getCheckupDate().toEpochDay(), VitalsRollup::new).add(vital);
+        }
+        long dailyCutoff = latestDay - policy.getRawDays() - policy.getDailyDays() + 1;
+        while (!daily.isEmpty() && daily.firstKey() < dailyCutoff) {
+            VitalsRollup day = daily.pollFirstEntry().getValue();
+            long weekStart = day.getStartDay() - Math.floorMod(day.getStartDay() + 3, 7L);
+            weekly.computeIfAbsent(weekStart, VitalsRollup::new).merge(day);
+        }
+        long weeklyCutoff = dailyCutoff - 7L * policy.getWeeklyWeeks();
+        while (!weekly.isEmpty() && weekly.firstKey() < weeklyCutoff) {
+            weekly.pollFirstEntry();
+        }
+    }
+
+    public synchronized List<VitalSign> range(long fromDay, long toDay) throws RpmsException {
+        List<VitalSign> result = new ArrayList<>();
+        for (VitalsRollup week : weekly.subMap(fromDay - 6, true, toDay, true).values()) {
+            result.add(week.toVitalSign(patient, 7));
+        }
+        for (VitalsRollup day : daily.subMap(fromDay, true, toDay, true).values()) {
+            result.add(day.toVitalSign(patient, 1));
+        }
+        return result;
+    }
+
+    public synchronized long estimatedBytes() {
+        return (daily.size() + weekly.size()) * BYTES_PER_ROLLUP;
+    }
+}
+
+class VitalsDatabase implements AutoCloseable {
+    private final VitalsStorageMode storageMode;
+    private final VitalsArchive archive;
+    private final Function<String, Patient> patientResolver;
+    private final Map<String, VitalsSeries> seriesByPatient = new ConcurrentHashMap<>();
+    private final Map<String, RollingVitalStats[]> statsByPatient = new ConcurrentHashMap<>();
+    private volatile int[] rollingWindows = {1, 7, 30};
+    private volatile double ewmaAlpha = 0.3;
+    private final Map<String, VitalsRollupTiers> rollupsByPatient = new ConcurrentHashMap<>();
+    private volatile VitalsRetentionPolicy retentionPolicy;
+    private volatile ThresholdRules thresholdRules = ThresholdRules.defaults();
+
+    public VitalsDatabase() {
+        this(VitalsStorageMode.OBJECT);
+    }
+
+    public VitalsDatabase(VitalsStorageMode storageMode) {
+        this.storageMode = storageMode != null && storageMode != VitalsStorageMode.ARCHIVE ? storageMode : VitalsStorageMode.OBJECT;
+        this.archive = null;
+        this.patientResolver = null;
+    }
+
+    public VitalsDatabase(Path archiveFile, Function<String, Patient> patientResolver) throws RpmsException {
+        this.storageMode = VitalsStorageMode.ARCHIVE;
+        this.archive = new VitalsArchive(archiveFile);
+        this.patientResolver = patientResolver;
+        int count = archive.size();
+        for (int i = 0; i < count; i++) {
+            if (!archive.isRemoved(i)) {
+                ((ArchivedVitalsSeries) seriesByPatient.computeIfAbsent(archive.patientIdAt(i), this::newSeries))
+                        .index(i, archive.epochDayAt(i));
+            }
+        }
+    }
+
+    public VitalsStorageMode getStorageMode() { return storageMode; }
+    public int[] getRollingWindows() { return rollingWindows.clone(); }
+
+    public void setRollingWindows(double ewmaAlpha, int... windowDays) throws RpmsException {
+        if (ewmaAlpha <= 0 || ewmaAlpha > 1) {
+            throw new RpmsException("INVALID_INPUT", "EWMA alpha must be in (0, 1]");
+        }
+        if (windowDays == null || windowDays.length == 0 || Arrays.stream(windowDays).anyMatch(d -> d <= 0)) {
+            throw new RpmsException("INVALID_INPUT", "Rolling windows must be positive day counts");
+        }
+        this.ewmaAlpha = ewmaAlpha;
+        this.rollingWindows = windowDays.clone();
+        statsByPatient.clear();
+    }
+
+    public VitalsRetentionPolicy getRetentionPolicy() { return retentionPolicy; }
+    public ThresholdRules getThresholdRules() { return thresholdRules; }
+
+    public void setThresholdRules(ThresholdRules thresholdRules) throws RpmsException {
+        if (thresholdRules == null) {
+            throw new RpmsException("INVALID_INPUT", "Threshold rules cannot be null");
+        }
+        this.thresholdRules = thresholdRules;
+    }
+
+    // Takes effect for each patient on their next stored reading.
+    public void setRetentionPolicy(VitalsRetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    public void addVitalSign(VitalSign vital) throws RpmsException {
+        validate(vital);
+        String patientID = vital.getPatient().getUserID();
+        VitalsSeries series = seriesByPatient.computeIfAbsent(patientID, this::newSeries);
+        RollingVitalStats[] windows = rollingStats(patientID, series);
+        series.add(vital);
+        updateRollingStats(windows, vital);
+        applyRetention(patientID, series);
+    }
+
+    public Map<VitalField, VitalStatistics> getRollingStats(String patientID, int windowDays) throws RpmsException {
+        if (patientID == null || patientID.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Patient ID cannot be null or empty");
+        }
+        VitalsSeries series = seriesByPatient.get(patientID);
+        if (series == null) {
+            return Collections.emptyMap();
+        }
+        for (RollingVitalStats window : rollingStats(patientID, series)) {
+            if (window.getWindowDays() == windowDays) {
+                Map<VitalField, VitalStatistics> stats = new EnumMap<>(VitalField.class);
+                for (VitalField field : VitalField.values()) {
+                    stats.put(field, window.get(field));
+                }
+                return stats;
+            }
+        }
+        throw new RpmsException("INVALID_INPUT", "No rolling window of " + windowDays + " days is configured");
+    }
+
+    // All or nothing: the whole batch is validated up front, and if storing still fails partway
+    // (e.g. ARCHIVE_FULL) the readings already stored are removed again before the error is rethrown.
+    public Map<String, List<VitalSign>> addAll(Collection<VitalSign> vitals) throws RpmsException {
+        if (vitals == null) {
+            throw new RpmsException("INVALID_INPUT", "Vital signs cannot be null");
+        }
+        Map<String, List<VitalSign>> byPatient = new LinkedHashMap<>();
+        for (VitalSign vital : vitals) {
+            validate(vital);
+            byPatient.computeIfAbsent(vital.getPatient().getUserID(), k -> new ArrayList<>()).add(vital);
+        }
+        Map<String, RollingVitalStats[]> windowsByPatient = new HashMap<>();
+        List<VitalSign> stored = new ArrayList<>(vitals.size());
+        try {
+            for (Map.Entry<String, List<VitalSign>> entry : byPatient.entrySet()) {
+                VitalsSeries series = seriesByPatient.computeIfAbsent(entry.getKey(), this::newSeries);
+                windowsByPatient.put(entry.getKey(), rollingStats(entry.getKey(), series));
+                synchronized (series) {
+                    for (VitalSign vital : entry.getValue()) {
+                        series.add(vital);
+                        stored.add(vital);
+                    }
+                }
+            }
+        } catch (RpmsException | RuntimeException e) {
+            for (int i = stored.size() - 1; i >= 0; i--) {
+                VitalSign vital = stored.get(i);
+                seriesByPatient.get(vital.getPatient().getUserID()).remove(vital);
+            }
+            throw e;
+        }
+        Map<String, List<VitalSign>> abnormal = new LinkedHashMap<>();
+        ThresholdRules rules = thresholdRules;
+        for (Map.Entry<String, List<VitalSign>> entry : byPatient.entrySet()) {
+            applyRetention(entry.getKey(), seriesByPatient.get(entry.getKey()));
+            for (VitalSign vital : entry.getValue()) {
+                updateRollingStats(windowsByPatient.get(entry.getKey()), vital);
+                if (!rules.isWithinThreshold(vital)) {
+                    abnormal.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(vital);
+                }
+            }
+        }
+        return abnormal;
+    }
+
+    public void removeVitalSign(VitalSign vital) throws RpmsException {
+        if (vital == null) {
+            throw new RpmsException("INVALID_INPUT", "Vital sign cannot be null");
+        }
+        VitalsSeries series = seriesByPatient.get(vital.getPatient().getUserID());
+        if (series != null) {
+            series.remove(vital);
+        }
+    }
+
+    public VitalSign getLatestVitalSign(String patientID) throws RpmsException {
+        if (patientID == null || patientID.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Patient ID cannot be null or empty");
+        }
+        VitalsSeries series = seriesByPatient.get(patientID);
+        return series != null ? series.latest() : null;
+    }
+
+    public List<VitalSign> getVitalSignHistory(String patientID) throws RpmsException {
+        if (patientID == null || patientID.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Patient ID cannot be null or empty");
+        }
+        VitalsSeries series = seriesByPatient.get(patientID);
+        if (series == null) {
+            return new ArrayList<>();
+        }
+        VitalsRollupTiers tiers = rollupsByPatient.get(patientID);
+        if (tiers == null) {
+            return series.history();
+        }
+        synchronized (series) {
+            List<VitalSign> history = tiers.range(Long.MIN_VALUE + 6, Long.MAX_VALUE);
+            history.addAll(series.history());
+            return history;
+        }
+    }
+
+    public List<VitalSign> getVitalSignHistory(String patientID, LocalDate from, LocalDate to) throws RpmsException {
+        if (patientID == null || patientID.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Patient ID cannot be null or empty");
+        }
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new RpmsException("INVALID_DATE", "History range must have a start date on or before its end date");
+        }
+        VitalsSeries series = seriesByPatient.get(patientID);
+        if (series == null) {
+            return new ArrayList<>();
+        }
+        VitalsRollupTiers tiers = rollupsByPatient.get(patientID);
+        if (tiers == null) {
+            return series.range(from, to);
+        }
+        synchronized (series) {
+            List<VitalSign> history = tiers.range(from.toEpochDay(), to.toEpochDay());
+            history.addAll(series.range(from, to));
+            return history;
+        }
+    }
+
+    public String getFootprintReport() {
+        long readings = 0;
+        long storedBytes = 0;
+        for (VitalsSeries series : seriesByPatient.values()) {
+            readings += series.size();
+            storedBytes += series.estimatedBytes();
+        }
+        for (VitalsRollupTiers tiers : rollupsByPatient.values()) {
+            storedBytes += tiers.estimatedBytes();
+        }
+        long objectBytes = readings * ObjectVitalsSeries.BYTES_PER_READING;
+        long columnarBytes = storageMode == VitalsStorageMode.COLUMNAR ? storedBytes
+                : readings * (4 * Double.BYTES + Integer.BYTES) + seriesByPatient.size() * 5 * 16L;
+        return String.format("Storage Mode: %s\nPatients: %d\nReadings: %d\nObject Layout: %d bytes (%.1f per reading)\nColumnar Layout: %d bytes (%.1f per reading)\nCurrent Heap Usage: %d bytes",
+                storageMode, seriesByPatient.size(), readings,
+                objectBytes, readings == 0 ? 0.0 : (double) objectBytes / readings,
+                columnarBytes, readings == 0 ? 0.0 : (double) columnarBytes / readings,
+                storedBytes);
+    }
+
+    private void applyRetention(String patientID, VitalsSeries series) throws RpmsException {
+        VitalsRetentionPolicy policy = retentionPolicy;
+        if (policy == null) {
+            return;
+        }
+        synchronized (series) {
+            VitalSign latest = series.latest();
+            if (latest == null) {
+                return;
+            }
+            long latestDay = latest.getCheckupDate().toEpochDay();
+            List<VitalSign> evicted = series.evictBefore(LocalDate.ofEpochDay(latestDay - policy.getRawDays() + 1));
+            if (!evicted.isEmpty() || rollupsByPatient.containsKey(patientID)) {
+                rollupsByPatient.computeIfAbsent(patientID, k -> new VitalsRollupTiers()).absorb(evicted, latestDay, policy);
+            }
+        }
+    }
+
+    // Built on first use from what the series already holds, so archived readings count again after a
+    // restart and a window change does not start from empty. Callers fetch this before adding a reading;
+    // holding the series monitor keeps a concurrent add out of the rebuild so it is not counted twice.
+    private RollingVitalStats[] rollingStats(String patientID, VitalsSeries series) throws RpmsException {
+        RollingVitalStats[] windows = statsByPatient.get(patientID);
+        if (windows != null) {
+            return windows;
+        }
+        synchronized (series) {
+            windows = statsByPatient.get(patientID);
+            if (windows == null) {
+                int[] days = rollingWindows;
+                windows = new RollingVitalStats[days.length];
+                for (int i = 0; i < days.length; i++) {
+                    windows[i] = new RollingVitalStats(days[i], ewmaAlpha);
+                }
+                if (series.size() > 0) {
+                    LocalDate today = LocalDate.now();
+                    for (VitalSign vital : series.range(today.minusDays(Arrays.stream(days).max().getAsInt() - 1), today)) {
+                        updateRollingStats(windows, vital);
+                    }
+                }
+                statsByPatient.put(patientID, windows);
+            }
+            return windows;
+        }
+    }
+
+    private void updateRollingStats(RollingVitalStats[] windows, VitalSign vital) {
+        for (RollingVitalStats window : windows) {
+            window.add(vital);
+        }
+    }
+
+    @Override
+    public void close() throws RpmsException {
+        if (archive != null) {
+            archive.close();
+        }
+    }
+
+    private void validate(VitalSign vital) throws RpmsException {
+        if (vital == null) {
+            throw new RpmsException("INVALID_INPUT", "Vital sign cannot be null");
+        }
+        if (vital.getPatient().getUserID() == null || vital.getPatient().getUserID().trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Vital sign must belong to a patient with an ID");
+        }
+        if (!Double.isFinite(vital.getHeartRate()) || !Double.isFinite(vital.getBloodPressure()) ||
+            !Double.isFinite(vital.getBodyTemperature()) || !Double.isFinite(vital.getOxygenLevel())) {
+            throw new RpmsException("INVALID_VITAL", "Vital sign values must be numbers for patient " + vital.getPatient().getUserID());
+        }
+        if (vital.getCheckupDate().isAfter(LocalDate.now())) {
+            throw new RpmsException("INVALID_DATE", "Checkup date must be a valid past or present date");
+        }
+        if (storageMode == VitalsStorageMode.ARCHIVE) {
+            VitalsArchive.checkArchivable(vital);
+        }
+    }
+
+    private VitalsSeries newSeries(String patientID) {
+        switch (storageMode) {
+            case COLUMNAR: return new ColumnarVitalsSeries();
+            case ARCHIVE: return new ArchivedVitalsSeries(archive, patientID, patientResolver);
+            default: return new ObjectVitalsSeries();
+        }
+    }
+}
+
+// Appointment Scheduling Classes
+enum AppointmentStatus {
+    PENDING("Pending"),
+    APPROVED("Approved"),
+    CANCELLED("Cancelled");
+
+    private final String label;
+
+    AppointmentStatus(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() { return label; }
+
+    public boolean canTransitionTo(AppointmentStatus next) {
+        switch (this) {
+            case PENDING: return next == APPROVED || next == CANCELLED;
+            case APPROVED: return next == CANCELLED;
+            default: return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
+
+class Appointment {
+    private String appointmentID;
+    private LocalDateTime appointmentTime;
+    private Patient patient;
+    private Doctor doctor;
+    private final AtomicReference<StatusStamp> status = new AtomicReference<>(new StatusStamp(AppointmentStatus.PENDING, 0));
+    private Duration duration;
+
+    public static final Duration DEFAULT_DURATION = Duration.ofMinutes(30);
+    // Longest bookable visit, a full clinic day. The cap bounds how far back a calendar has to look for
+    // bookings that could overlap a new one; longer requests are rejected with INVALID_INPUT.
+    public static final Duration MAX_DURATION = Duration.ofHours(8);
+
+    private static final class StatusStamp {
+        final AppointmentStatus status;
+        final long version;
+
+        StatusStamp(AppointmentStatus status, long version) {
+            this.status = status;
+            this.version = version;
+        }
+    }
+
+    public Appointment(String appointmentID, LocalDateTime appointmentTime, Patient patient, Doctor doctor) throws RpmsException {
+        this(appointmentID, appointmentTime, patient, doctor, DEFAULT_DURATION);
+    }
+
+    public Appointment(String appointmentID, LocalDateTime appointmentTime, Patient patient, Doctor doctor, Duration duration) throws RpmsException {
+        if (appointmentID == null || appointmentTime == null || patient == null || doctor == null || duration == null) {
+            throw new RpmsException("INVALID_INPUT", "Appointment details cannot be null");
+        }
+        if (duration.isNegative() || duration.isZero() || duration.compareTo(MAX_DURATION) > 0) {
+            throw new RpmsException("INVALID_INPUT", "Appointment duration must be positive and at most " + MAX_DURATION.toHours() + " hours");
+        }
+        if (appointmentTime.isBefore(LocalDateTime.now())) {
+            throw new RpmsException("INVALID_DATE", "Appointment time cannot be in the past");
+        }
+        this.appointmentID = appointmentID;
+        this.appointmentTime = appointmentTime;
+        this.patient = patient;
+        this.doctor = doctor;
+        this.duration = duration;
+    }
+
+    public String getAppointmentID() { return appointmentID; }
+    public LocalDateTime getAppointmentTime() { return appointmentTime; }
+    public Patient getPatient() { return patient; }
+    public Doctor getDoctor() { return doctor; }
+    public AppointmentStatus getAppointmentStatus() { return status.get().status; }
+    public long getVersion() { return status.get().version; }
+    public Duration getDuration() { return duration; }
+    public LocalDateTime getEndTime() { return appointmentTime.plus(duration); }
+
+    public void setAppointmentID(String appointmentID) throws RpmsException {
+        if (appointmentID == null || appointmentID.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Appointment ID cannot be null or empty");
+        }
+        this.appointmentID = appointmentID;
+    }
+
+    public void setAppointmentTime(LocalDateTime appointmentTime) throws RpmsException {
+        if (appointmentTime == null || appointmentTime.isBefore(LocalDateTime.now())) {
+            throw new RpmsException("INVALID_DATE", "Appointment time cannot be in the past");
+        }
+        this.appointmentTime = appointmentTime;
+    }
+
+    public void setPatient(Patient patient) throws RpmsException {
+        if (patient == null) {
+            throw new RpmsException("INVALID_INPUT", "Patient cannot be null");
+        }
+        this.patient = patient;
+    }
+
+    public void setDoctor(Doctor doctor) throws RpmsException {
+        if (doctor == null) {
+            throw new RpmsException("INVALID_INPUT", "Doctor cannot be null");
+        }
+        this.doctor = doctor;
+    }
+
+    // Applies a validated transition and returns the status it replaced.
+    public AppointmentStatus setAppointmentStatus(AppointmentStatus next) throws RpmsException {
+        if (next == null) {
+            throw new RpmsException("INVALID_INPUT", "Appointment status cannot be null");
+        }
+        StatusStamp current;
+        do {
+            current = status.get();
+            if (!current.status.canTransitionTo(next)) {
+                throw new RpmsException("INVALID_TRANSITION", "Appointment " + appointmentID + " is " + current.status +
+                        " and cannot become " + next);
+            }
+        } while (!status.compareAndSet(current, new StatusStamp(next, current.version + 1)));
+        return current.status;
+    }
+
+    public boolean compareAndSetStatus(AppointmentStatus expected, AppointmentStatus next) {
+        StatusStamp current = status.get();
+        return current.status == expected && expected.canTransitionTo(next)
+                && status.compareAndSet(current, new StatusStamp(next, current.version + 1));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("\nAppointment ID: %s\nAppointment Time: %s\nPatient: %s\nDoctor: %s\nStatus: %s",
+                appointmentID, appointmentTime, patient.getName(), doctor.getName(), getAppointmentStatus());
+    }
+}
+
+class DoctorCalendar {
+    private final Doctor doctor;
+    private final ConcurrentSkipListMap<LocalDateTime, Appointment> bookings = new ConcurrentSkipListMap<>();
+
+    public DoctorCalendar(Doctor doctor) throws RpmsException {
+        if (doctor == null) {
+            throw new RpmsException("INVALID_INPUT", "Doctor cannot be null");
+        }
+        this.doctor = doctor;
+    }
+
+    // The overlap check and the insert must not interleave with another booking, so writers take this
+    // calendar's lock; AppointmentManager also holds it while it moves an appointment between statuses.
+    // There is one calendar per doctor, so bookings for different doctors never contend, and readers go
+    // straight to the skip list without locking.
+    public synchronized void book(Appointment appointment) throws RpmsException {
+        LocalDateTime start = appointment.getAppointmentTime();
+        LocalDateTime end = appointment.getEndTime();
+        if (!isAvailable(start, end)) {
+            throw new RpmsException("SLOT_UNAVAILABLE", "Dr. " + doctor.getName() + " is not available from " + start + " to " + end);
+        }
+        List<Appointment> clashes = overlapping(start, end);
+        if (!clashes.isEmpty()) {
+            throw taken(clashes.get(0));
+        }
+        bookings.put(start, appointment);
+    }
+
+    public synchronized boolean release(Appointment appointment) {
+        return bookings.remove(appointment.getAppointmentTime(), appointment);
+    }
+
+    public Appointment get(LocalDateTime start) {
+        return bookings.get(start);
+    }
+
+    public List<Appointment> range(LocalDateTime from, LocalDateTime to) {
+        return new ArrayList<>(bookings.subMap(from, true, to, false).values());
+    }
+
+    // Walks forward from the requested time past each booking or availability gap that is too short.
+    // Cost is O(log n) per step; the number of steps is the number of obstacles skipped.
+    public LocalDateTime nextFreeSlot(LocalDateTime from, Duration length) throws RpmsException {
+        if (from == null || length == null || length.isNegative() || length.isZero()) {
+            throw new RpmsException("INVALID_INPUT", "A start time and a positive length are required");
+        }
+        LocalDateTime candidate = from;
+        while (true) {
+            candidate = alignToAvailability(candidate, length);
+            if (candidate == null) {
+                return null;
+            }
+            LocalDateTime blockedUntil = null;
+            for (Appointment booked : overlapping(candidate, candidate.plus(length))) {
+                LocalDateTime bookedEnd = booked.getEndTime();
+                if (blockedUntil == null || bookedEnd.isAfter(blockedUntil)) {
+                    blockedUntil = bookedEnd;
+                }
+            }
+            if (blockedUntil == null) {
+                return candidate;
+            }
+            candidate = blockedUntil;
+        }
+    }
+
+    // Appointments are at most MAX_DURATION long, so anything that overlaps [start, end) starts after
+    // start - MAX_DURATION.
+    private List<Appointment> overlapping(LocalDateTime start, LocalDateTime end) {
+        List<Appointment> result = new ArrayList<>(2);
+        for (Appointment booked : bookings.subMap(start.minus(Appointment.MAX_DURATION), false, end, false).values()) {
+            if (booked.getEndTime().isAfter(start)) {
+                result.add(booked);
+            }
+        }
+        return result;
+    }
+
+    private RpmsException taken(Appointment clash) {
+        return new RpmsException("SLOT_TAKEN", "Dr. " + doctor.getName() + " already has an appointment from " +
+                clash.getAppointmentTime() + " to " + clash.getEndTime());
+    }
+
+    // A doctor without published availability can be booked at any time.
+    private boolean isAvailable(LocalDateTime start, LocalDateTime end) {
+        NavigableSet<LocalDateTime> slots = doctor.getAvailableTime();
+        return slots.isEmpty() || !coveredUntil(slots, start).isBefore(end);
+    }
+    private LocalDateTime alignToAvailability(LocalDateTime candidate, Duration length) {
+        NavigableSet<LocalDateTime> slots = doctor.getAvailableTime();
+        if (slots.isEmpty()) {
+            return candidate;
+        }
+        while (candidate != null) {
+            LocalDateTime covered = coveredUntil(slots, candidate);
+            if (!covered.isBefore(candidate.plus(length))) {
+                return candidate;
+            }
+            candidate = slots.ceiling(covered.isAfter(candidate) ? covered : candidate.plusNanos(1));
+        }
+        return null;
+    }
+
+    private static LocalDateTime coveredUntil(NavigableSet<LocalDateTime> slots, LocalDateTime from) {
+        LocalDateTime slot = slots.floor(from);
+        if (slot == null || !slot.plus(Appointment.DEFAULT_DURATION).isAfter(from)) {
+            return from;
+        }
+        LocalDateTime covered = slot.plus(Appointment.DEFAULT_DURATION);
+        LocalDateTime next;
+        while ((next = slots.floor(covered)) != null && next.isAfter(slot)) {
+            slot = next;
+            covered = slot.plus(Appointment.DEFAULT_DURATION);
+        }
+        return covered;
+    }
+}
+
+class AppointmentManager {
+    private static final Comparator<Appointment> BY_TIME = Comparator.comparing(Appointment::getAppointmentTime)
+            .thenComparing(Appointment::getAppointmentID);
+
+    private final Map<String, Appointment> byId = new ConcurrentHashMap<>();
+    private final Map<String, DoctorCalendar> calendars = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Appointment>> byPatient = new ConcurrentHashMap<>();
+    private final Map<AppointmentStatus, ConcurrentSkipListMap<IndexKey, Appointment>> byStatus = new EnumMap<>(AppointmentStatus.class);
+
+    private static final class IndexKey implements Comparable<IndexKey> {
+        final LocalDateTime time;
+        final String appointmentID;
+
+        IndexKey(LocalDateTime time, String appointmentID) {
+            this.time = time;
+            this.appointmentID = appointmentID;
+        }
+
+        IndexKey(Appointment appointment) {
+            this(appointment.getAppointmentTime(), appointment.getAppointmentID());
+        }
+
+        @Override
+        public int compareTo(IndexKey other) {
+            int byTime = time.compareTo(other.time);
+            return byTime != 0 ? byTime : appointmentID.compareTo(other.appointmentID);
+        }
+    }
+
+    public AppointmentManager() {
+        for (AppointmentStatus status : AppointmentStatus.values()) {
+            byStatus.put(status, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    public Appointment requestAppointment(String appointmentID, LocalDateTime time, Patient patient, Doctor doctor) throws RpmsException {
+        return requestAppointment(appointmentID, time, patient, doctor, Appointment.DEFAULT_DURATION);
+    }
+
+    public Appointment requestAppointment(String appointmentID, LocalDateTime time, Patient patient, Doctor doctor, Duration duration) throws RpmsException {
+        Appointment appointment = new Appointment(appointmentID, time, patient, doctor, duration);
+        if (byId.putIfAbsent(appointmentID, appointment) != null) {
+            throw new RpmsException("DUPLICATE_APPOINTMENT", "Appointment ID already exists: " + appointmentID);
+        }
+        // Indexed before booking: approve and cancel find appointments through the calendar, so a status
+        // change can never run ahead of the PENDING index entry.
+        IndexKey key = new IndexKey(appointment);
+        byStatus.get(AppointmentStatus.PENDING).put(key, appointment);
+        try {
+            calendarFor(doctor).book(appointment);
+        } catch (RpmsException e) {
+            byStatus.get(AppointmentStatus.PENDING).remove(key, appointment);
+            byId.remove(appointmentID, appointment);
+            throw e;
+        }
+        byPatient.computeIfAbsent(patient.getUserID(), id -> new ConcurrentSkipListSet<>(BY_TIME)).add(appointment);
+        return appointment;
+    }
+
+    public Appointment approveAppointment(LocalDateTime time, Patient patient, Doctor doctor) throws RpmsException {
+        Appointment a = find(time, patient, doctor);
+        synchronized (calendarFor(doctor)) {
+            if (a.getAppointmentStatus() != AppointmentStatus.PENDING) {
+                throw new RpmsException("INVALID_TRANSITION", "Appointment is " + a.getAppointmentStatus() + " and cannot be approved");
+            }
+            reindex(a, a.setAppointmentStatus(AppointmentStatus.APPROVED), AppointmentStatus.APPROVED);
+        }
+        return a;
+    }
+
+    public Appointment cancelAppointment(LocalDateTime time, Patient patient, Doctor doctor) throws RpmsException {
+        Appointment a = find(time, patient, doctor);
+        DoctorCalendar calendar = calendarFor(doctor);
+        synchronized (calendar) {
+            if (!a.getAppointmentStatus().canTransitionTo(AppointmentStatus.CANCELLED)) {
+                throw new RpmsException("INVALID_TRANSITION", "Appointment is " + a.getAppointmentStatus() + " and cannot be cancelled");
+            }
+            reindex(a, a.setAppointmentStatus(AppointmentStatus.CANCELLED), AppointmentStatus.CANCELLED);
+            calendar.release(a);
+        }
+        return a;
+    }
+
+    public LocalDateTime findNextFreeSlot(Doctor doctor, LocalDateTime from, Duration length) throws RpmsException {
+        if (doctor == null) {
+            throw new RpmsException("INVALID_INPUT", "Doctor cannot be null");
+        }
+        return calendarFor(doctor).nextFreeSlot(from, length);
+    }
+
+    public Appointment getAppointment(String appointmentID) {
+        return byId.get(appointmentID);
+    }
+
+    // Cancelled appointments free their slot and no longer appear in a doctor's calendar.
+    public Collection<Appointment> getDoctorAppointments(Doctor doctor, LocalDateTime from, LocalDateTime to) throws RpmsException {
+        if (doctor == null || from == null || to == null || to.isBefore(from)) {
+            throw new RpmsException("INVALID_INPUT", "Doctor and a valid time range are required");
+        }
+        DoctorCalendar calendar = calendars.get(doctor.getUserID());
+        return calendar == null ? Collections.emptyList() : calendar.range(from, to);
+    }
+
+    public Collection<Appointment> getDoctorAppointments(Doctor doctor, LocalDate day) throws RpmsException {
+        if (day == null) {
+            throw new RpmsException("INVALID_INPUT", "Day cannot be null");
+        }
+        return getDoctorAppointments(doctor, day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+    }
+
+    public Collection<Appointment> getPatientAppointments(Patient patient) throws RpmsException {
+        if (patient == null) {
+            throw new RpmsException("INVALID_INPUT", "Patient cannot be null");
+        }
+        NavigableSet<Appointment> schedule = byPatient.get(patient.getUserID());
+        return schedule == null ? Collections.emptyList() : Collections.unmodifiableCollection(schedule);
+    }
+
+    public List<Appointment> getAppointments() {
+        return new ArrayList<>(byId.values());
+    }
+
+    // Read-only view over the status index, e.g. approved appointments in the next 24 hours.
+    // An appointment changing status is briefly visible in neither index while it moves.
+    public Collection<Appointment> getAppointments(AppointmentStatus status, LocalDateTime from, LocalDateTime to) throws RpmsException {
+        if (status == null || from == null || to == null || to.isBefore(from)) {
+            throw new RpmsException("INVALID_INPUT", "Status and a valid time range are required");
+        }
+        return Collections.unmodifiableCollection(byStatus.get(status)
+                .subMap(new IndexKey(from, ""), true, new IndexKey(to, ""), false).values());
+    }
+
+    public Collection<Appointment> getAppointments(AppointmentStatus status) throws RpmsException {
+        if (status == null) {
+            throw new RpmsException("INVALID_INPUT", "Status cannot be null");
+        }
+        return Collections.unmodifiableCollection(byStatus.get(status).values());
+    }
+
+    // Callers hold the doctor's calendar lock across the status change and this move, so concurrent
+    // approve and cancel calls apply their index moves in the same order as their status changes.
+    private void reindex(Appointment appointment, AppointmentStatus from, AppointmentStatus to) {
+        IndexKey key = new IndexKey(appointment);
+        byStatus.get(from).remove(key, appointment);
+        byStatus.get(to).put(key, appointment);
+    }
+
+    private DoctorCalendar calendarFor(Doctor doctor) throws RpmsException {
+        DoctorCalendar calendar = calendars.get(doctor.getUserID());
+        if (calendar == null) {
+            DoctorCalendar created = new DoctorCalendar(doctor);
+            calendar = calendars.putIfAbsent(doctor.getUserID(), created);
+            if (calendar == null) {
+                calendar = created;
+            }
+        }
+        return calendar;
+    }
+
+    private Appointment find(LocalDateTime time, Patient patient, Doctor doctor) throws RpmsException {
+        if (time == null || patient == null || doctor == null) {
+            throw new RpmsException("INVALID_INPUT", "Appointment details cannot be null");
+        }
+        DoctorCalendar calendar = calendars.get(doctor.getUserID());
+        Appointment a = calendar == null ? null : calendar.get(time);
+        if (a == null || !a.getPatient().equals(patient)) {
+            throw new RpmsException("APPOINTMENT_NOT_FOUND", "Appointment not found");
+        }
+        return a;
+    }
+}
+
+// Doctor-Patient Interaction Classes
+class Feedback {
+    private Patient patient;
+    private Doctor doctor;
+    private LocalDate date;
+    private String comments;
+
+    public Feedback(Patient patient, Doctor doctor, LocalDate date, String comments) throws RpmsException {
+        if (patient == null || doctor == null || date == null || comments == null || comments.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Feedback details cannot be null or empty");
+        }
+        if (date.isAfter(LocalDate.now())) {
+            throw new RpmsException("INVALID_DATE", "Feedback date cannot be in the future");
+        }
+        this.patient = patient;
+        this.doctor = doctor;
+        this.date = date;
+        this.comments = comments;
+    }
+
+    public String getComments() { return comments; }
+    public LocalDate getDate() { return date; }
+
+    public void setComments(String comments) throws RpmsException {
+        if (comments == null || comments.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Comments cannot be null or empty");
+        }
+        this.comments = comments;
+    }
+
+    public void setDate(LocalDate date) throws RpmsException {
+        if (date == null || date.isAfter(LocalDate.now())) {
+            throw new RpmsException("INVALID_DATE", "Feedback date cannot be in the future");
+        }
+        this.date = date;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Feedback from Dr. %s on %s: %s", doctor.getName(), date, comments);
+    }
+}
+
+class Prescription {
+    private String prescriptionID;
+    private Patient patient;
+    private String medication;
+    private String dosage;
+    private String schedule;
+    private MedicationSchedule recurrence;
+    private final LocalDate issuedOn = LocalDate.now();
+
+    public Prescription(String prescriptionID, Patient patient, String medication, String dosage, String schedule) throws RpmsException {
+        if (prescriptionID == null || patient == null || medication == null || dosage == null || schedule == null ||
+            prescriptionID.trim().isEmpty() || medication.trim().isEmpty() || dosage.trim().isEmpty() || schedule.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Prescription details cannot be null or empty");
+        }
+        this.prescriptionID = prescriptionID;
+        this.patient = patient;
+        this.medication = medication;
+        this.dosage = dosage;
+        this.recurrence = MedicationSchedule.parseOrFreeText(schedule).startingOn(issuedOn);
+        this.schedule = schedule;
+    }
+
+    public String getPrescriptionID() { return prescriptionID; }
+    public Patient getPatient() { return patient; }
+    public String getMedication() { return medication; }
+    public String getDosage() { return dosage; }
+    public String getSchedule() { return schedule; }
+    public MedicationSchedule getRecurrence() { return recurrence; }
+    public LocalDate getIssuedOn() { return issuedOn; }
+
+    public void setPrescriptionID(String prescriptionID) throws RpmsException {
+        if (prescriptionID == null || prescriptionID.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Prescription ID cannot be null or empty");
+        }
+        this.prescriptionID = prescriptionID;
+    }
+
+    public void setPatient(Patient patient) throws RpmsException {
+        if (patient == null) {
+            throw new RpmsException("INVALID_INPUT", "Patient cannot be null");
+        }
+        this.patient = patient;
+    }
+
+    public void setMedication(String medication) throws RpmsException {
+        if (medication == null || medication.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Medication cannot be null or empty");
+        }
+        this.medication = medication;
+    }
+
+    public void setDosage(String dosage) throws RpmsException {
+        if (dosage == null || dosage.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Dosage cannot be null or empty");
+        }
+        this.dosage = dosage;
+    }
+
+    public void setSchedule(String schedule) throws RpmsException {
+        if (schedule == null || schedule.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Schedule cannot be null or empty");
+        }
+        this.recurrence = MedicationSchedule.parseOrFreeText(schedule).startingOn(issuedOn);
+        this.schedule = schedule;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Prescription ID: %s\nPatient: %s\nMedication: %s\nDosage: %s\nSchedule: %s",
+                prescriptionID, patient.getName(), medication, dosage, schedule);
+    }
+}
+
+class MedicationSchedule {
+    private static final int MINUTES_PER_DAY = 1440;
+    // Weekly doses are the longest interval a reminder makes sense for.
+    public static final int MAX_INTERVAL_MINUTES = 7 * MINUTES_PER_DAY;
+    // Digit counts are capped so amounts always fit an int; the interval limit is checked separately.
+    private static final Pattern INTERVAL = Pattern.compile(
+            "(?:every\\s+(\\d{1,6})\\s*|q)(h|hr|hrs|hours?|m|min|mins|minutes?)?(\\d{1,6})?(h)?(?:\\s+from\\s+(\\d{1,2}:\\d{2}))?");
+    private static final Pattern TIMES = Pattern.compile("\\d{1,2}:\\d{2}");
+
+    private final int intervalMinutes;
+    private final int anchorMinute;
+    private final int[] timesOfDay;
+    private final long startDay;
+
+    private MedicationSchedule(int intervalMinutes, int anchorMinute, int[] timesOfDay, long startDay) {
+        this.intervalMinutes = intervalMinutes;
+        this.anchorMinute = anchorMinute;
+        this.timesOfDay = timesOfDay;
+        this.startDay = startDay;
+    }
+
+    // Interval doses are counted from the anchor time on the start day, so "every 5h from 08:00" gives
+    // 08:00 on the day the prescription was issued rather than whatever falls out of the epoch.
+    public MedicationSchedule startingOn(LocalDate date) {
+        return new MedicationSchedule(intervalMinutes, anchorMinute, timesOfDay, date.toEpochDay());
+    }
+
+    public static MedicationSchedule every(int intervalMinutes, int anchorMinute) throws RpmsException {
+        if (intervalMinutes <= 0 || anchorMinute < 0 || anchorMinute >= MINUTES_PER_DAY) {
+            throw new RpmsException("INVALID_SCHEDULE", "Interval must be positive and start within the day");
+        }
+        if (intervalMinutes > MAX_INTERVAL_MINUTES) {
+            throw new RpmsException("INVALID_SCHEDULE", "Interval cannot be longer than " + MAX_INTERVAL_MINUTES / 60 + " hours");
+        }
+        return new MedicationSchedule(intervalMinutes, anchorMinute, null, 0);
+    }
+
+    public static MedicationSchedule dailyAt(int... minutesOfDay) throws RpmsException {
+        if (minutesOfDay == null || minutesOfDay.length == 0) {
+            throw new RpmsException("INVALID_SCHEDULE", "At least one time of day is required");
+        }
+        int[] times = Arrays.stream(minutesOfDay).sorted().distinct().toArray();
+        if (times[0] < 0 || times[times.length - 1] >= MINUTES_PER_DAY) {
+            throw new RpmsException("INVALID_SCHEDULE", "Times of day must fall between 00:00 and 23:59");
+        }
+        return new MedicationSchedule(0, 0, times, 0);
+    }
+
+    public static MedicationSchedule asNeeded() {
+        return new MedicationSchedule(0, 0, new int[0], 0);
+    }
+
+    // Free-form directions such as "after meals" were always accepted, so anything parse() does not
+    // recognise is kept as text with no recurrence (and therefore no reminders) instead of being rejected.
+    public static MedicationSchedule parseOrFreeText(String schedule) throws RpmsException {
+        try {
+            return parse(schedule);
+        } catch (RpmsException e) {
+            if (!"INVALID_SCHEDULE".equals(e.getErrorCode())) {
+                throw e;
+            }
+            return asNeeded();
+        }
+    }
+
+    // Accepts "every 8h", "q6h", "every 30 min from 07:00", "daily at 08:00",
+    // "twice daily at 09:00/21:00", "three times daily", "bid", "at 08:00, 20:00" and "as needed".
+    public static MedicationSchedule parse(String schedule) throws RpmsException {
+        if (schedule == null || schedule.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Schedule cannot be null or empty");
+        }
+        String text = schedule.trim().toLowerCase(Locale.ROOT);
+        if (text.equals("as needed") || text.equals("prn")) {
+            return asNeeded();
+        }
+        Matcher interval = INTERVAL.matcher(text);
+        if (interval.matches() && (interval.group(1) != null) != (interval.group(3) != null)) {
+            boolean shorthand = interval.group(3) != null;
+            if (shorthand ? interval.group(2) != null || interval.group(4) == null : interval.group(2) == null) {
+                throw new RpmsException("INVALID_SCHEDULE", "Unrecognised schedule: " + schedule);
+            }
+            int amount = Integer.parseInt(shorthand ? interval.group(3) : interval.group(1));
+            boolean hours = shorthand || interval.group(2).startsWith("h");
+            int anchor = interval.group(5) != null ? minuteOfDay(interval.group(5), schedule) : 8 * 60;
+            long minutes = hours ? amount * 60L : amount;
+            if (minutes > MAX_INTERVAL_MINUTES) {
+                throw new RpmsException("INVALID_SCHEDULE", "Interval cannot be longer than " + MAX_INTERVAL_MINUTES / 60 + " hours");
+            }
+            return every((int) minutes, anchor);
+        }
+        List<Integer> times = new ArrayList<>();
+        Matcher time = TIMES.matcher(text);
+        while (time.find()) {
+            times.add(minuteOfDay(time.group(), schedule));
+        }
+        String frequency = text.replaceAll("\\bat\\b.*$", "").trim();
+        int[] defaults;
+        switch (frequency) {
+            case "":
+                defaults = null;
+                break;
+            case "daily": case "once daily": case "once a day": case "qd": case "od":
+                defaults = new int[] {8 * 60};
+                break;
+            case "twice daily": case "twice a day": case "bid":
+                defaults = new int[] {9 * 60, 21 * 60};
+                break;
+            case "three times daily": case "thrice daily": case "three times a day": case "tid":
+                defaults = new int[] {8 * 60, 14 * 60, 20 * 60};
+                break;
+            case "four times daily": case "four times a day": case "qid":
+                defaults = new int[] {8 * 60, 12 * 60, 16 * 60, 20 * 60};
+                break;
+            default:
+                throw new RpmsException("INVALID_SCHEDULE", "Unrecognised schedule: " + schedule);
+        }
+        if (times.isEmpty()) {
+            if (defaults == null) {
+                throw new RpmsException("INVALID_SCHEDULE", "Unrecognised schedule: " + schedule);
+            }
+            return dailyAt(defaults);
+        }
+        if (defaults != null && defaults.length != times.size()) {
+            throw new RpmsException("INVALID_SCHEDULE", "Schedule '" + schedule + "' lists " + times.size() +
+                    " times but asks for " + defaults.length + " doses a day");
+        }
+        return dailyAt(times.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public boolean isAsNeeded() {
+        return timesOfDay != null && timesOfDay.length == 0;
+    }
+
+    // Minutes are counted on the local wall clock (epoch day * 1440 + minute of day), so dose times stay
+    // put across DST changes. Returns Long.MAX_VALUE for as-needed schedules.
+    public long nextFireMinute(long localMinute) {
+        if (intervalMinutes > 0) {
+            long anchor = startDay * MINUTES_PER_DAY + anchorMinute;
+            if (localMinute < anchor) {
+                return anchor;
+            }
+            return anchor + (Math.floorDiv(localMinute - anchor, intervalMinutes) + 1) * intervalMinutes;
+        }
+        if (timesOfDay.length == 0) {
+            return Long.MAX_VALUE;
+        }
+        long day = Math.floorDiv(localMinute, MINUTES_PER_DAY);
+        int minute = Math.floorMod(localMinute, MINUTES_PER_DAY);
+        for (int t : timesOfDay) {
+            if (t > minute) {
+                return day * MINUTES_PER_DAY + t;
+            }
+        }
+        return (day + 1) * MINUTES_PER_DAY + timesOfDay[0];
+    }
+
+    public LocalDateTime nextFireAfter(LocalDateTime time) {
+        long next = nextFireMinute(toLocalMinute(time));
+        if (next == Long.MAX_VALUE) {
+            return null;
+        }
+        return LocalDate.ofEpochDay(Math.floorDiv(next, MINUTES_PER_DAY)).atStartOfDay()
+                .plusMinutes(Math.floorMod(next, MINUTES_PER_DAY));
+    }
+
+    public static long toLocalMinute(LocalDateTime time) {
+        return time.toLocalDate().toEpochDay() * MINUTES_PER_DAY + time.getHour() * 60 + time.getMinute();
+    }
+
+    private static int minuteOfDay(String hhmm, String schedule) throws RpmsException {
+        int colon = hhmm.indexOf(':');
+        int hour = Integer.parseInt(hhmm.substring(0, colon));
+        int minute = Integer.parseInt(hhmm.substring(colon + 1));
+        if (hour > 23 || minute > 59) {
+            throw new RpmsException("INVALID_SCHEDULE", "Invalid time " + hhmm + " in schedule: " + schedule);
+        }
+        return hour * 60 + minute;
+    }
+
+    @Override
+    public String toString() {
+        if (intervalMinutes > 0) {
+            return String.format("every %d min from %02d:%02d", intervalMinutes, anchorMinute / 60, anchorMinute % 60);
+        }
+        if (timesOfDay.length == 0) {
+            return "as needed";
+        }
+        return Arrays.stream(timesOfDay).mapToObj(t -> String.format("%02d:%02d", t / 60, t % 60))
+                .collect(Collectors.joining("/", "daily at ", ""));
+    }
+}
+
+class MedicalHistory {
+    private Patient patient;
+    private List<String> feedbacks = new ArrayList<>();
+    private List<Prescription> prescriptions = new ArrayList<>();
+
+    public MedicalHistory(Patient patient) throws RpmsException {
+        if (patient == null) {
+            throw new RpmsException("INVALID_INPUT", "Patient cannot be null");
+        }
+        this.patient = patient;
+    }
+
+    public void addFeedback(String feedback) throws RpmsException {
+        if (feedback == null || feedback.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Feedback cannot be null or empty");
+        }
+        feedbacks.add(feedback);
     }
 
     public void addPrescription(Prescription prescription) throws RpmsException {
@@ -704,15 +2651,145 @@ class MedicalHistory {
 // Notifications and Reminders Classes
 interface Notifiable {
     void sendNotification(String to, String subject, String message) throws RpmsException;
+
+    // Completes once the message is actually delivered; direct notifiers deliver before returning.
+    default CompletableFuture<Void> deliver(String to, String subject, String message) throws RpmsException {
+        sendNotification(to, subject, message);
+        return CompletableFuture.completedFuture(null);
+    }
+}
+
+class SmtpTransportPool implements AutoCloseable {
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+    private final Session session;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final int maxConnections;
+    private final BlockingQueue<Transport> idle;
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private volatile boolean closed;
+
+    public SmtpTransportPool(Session session, String host, int port, String username, String password, int maxConnections) throws RpmsException {
+        if (session == null || host == null || username == null || password == null || maxConnections <= 0) {
+            throw new RpmsException("INVALID_INPUT", "SMTP pool settings cannot be null and the pool size must be positive");
+        }
+        this.session = session;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.maxConnections = maxConnections;
+        this.idle = new ArrayBlockingQueue<>(maxConnections);
+    }
+
+    public int getOpenConnections() { return open.get(); }
+    public long getConnectCount() { return connects.get(); }
+    public long getMessagesSent() { return sent.get(); }
+
+    public void send(Message message) throws RpmsException {
+        try {
+            message.saveChanges();
+        } catch (MessagingException e) {
+            throw new RpmsException("EMAIL_ERROR", "Failed to prepare email", e);
+        }
+        for (int attempt = 0; ; attempt++) {
+            Transport transport = borrow();
+            try {
+                transport.sendMessage(message, message.getAllRecipients());
+                sent.incrementAndGet();
+                release(transport);
+                return;
+            } catch (MessagingException e) {
+                discard(transport);
+                if (attempt > 0) {
+                    throw new RpmsException("EMAIL_ERROR", "Failed to send email over pooled connection", e);
+                }
+            }
+        }
+    }
+
+    private Transport borrow() throws RpmsException {
+        if (closed) {
+            throw new RpmsException("EMAIL_ERROR", "SMTP connection pool is closed");
+        }
+        Transport transport = idle.poll();
+        if (transport == null) {
+            if (open.incrementAndGet() <= maxConnections) {
+                return connect();
+            }
+            open.decrementAndGet();
+            try {
+                transport = idle.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RpmsException("EMAIL_ERROR", "Interrupted while waiting for an SMTP connection", e);
+            }
+            if (transport == null) {
+                throw new RpmsException("EMAIL_ERROR", "Timed out waiting for an SMTP connection");
+            }
+        }
+        if (!transport.isConnected()) {
+            discard(transport);
+            open.incrementAndGet();
+            return connect();
+        }
+        return transport;
+    }
+
+    private Transport connect() throws RpmsException {
+        try {
+            Transport transport = session.getTransport("smtp");
+            transport.connect(host, port, username, password);
+            connects.incrementAndGet();
+            return transport;
+        } catch (MessagingException e) {
+            open.decrementAndGet();
+            throw new RpmsException("EMAIL_ERROR", "Failed to connect to SMTP server " + host, e);
+        }
+    }
+
+    private void release(Transport transport) {
+        if (closed || !idle.offer(transport)) {
+            discard(transport);
+        }
+    }
+
+    private void discard(Transport transport) {
+        open.decrementAndGet();
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            // connection is already unusable
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Transport transport;
+        while ((transport = idle.poll()) != null) {
+            discard(transport);
+        }
+    }
 }
 
-class EmailNotification implements Notifiable {
+class EmailNotification implements Notifiable, AutoCloseable {
     private final Session mailSession;
     private final String from;
     private final String smtpHost;
     private final String smtpPort;
+    private final SmtpTransportPool transportPool;
 
     public EmailNotification(String from, String password, String smtpHost, String smtpPort) throws RpmsException {
+        this(from, password, smtpHost, smtpPort, 0);
+    }
+
+    public EmailNotification(String from, String password, String smtpHost, String smtpPort, int poolSize) throws RpmsException {
         if (from == null || password == null || smtpHost == null || smtpPort == null ||
             from.trim().isEmpty() || password.trim().isEmpty() || smtpHost.trim().isEmpty() || smtpPort.trim().isEmpty()) {
             throw new RpmsException("INVALID_INPUT", "Email notification credentials cannot be null or empty");
@@ -731,8 +2808,21 @@ class EmailNotification implements Notifiable {
                 return new PasswordAuthentication(from, password);
             }
         });
+        if (poolSize > 0) {
+            int port;
+            try {
+                port = Integer.parseInt(smtpPort.trim());
+            } catch (NumberFormatException e) {
+                throw new RpmsException("INVALID_INPUT", "SMTP port must be a number", e);
+            }
+            this.transportPool = new SmtpTransportPool(mailSession, smtpHost, port, from, password, poolSize);
+        } else {
+            this.transportPool = null;
+        }
     }
 
+    public SmtpTransportPool getTransportPool() { return transportPool; }
+
     @Override
     public void sendNotification(String to, String subject, String message) throws RpmsException {
         if (to == null || subject == null || message == null || to.trim().isEmpty() || subject.trim().isEmpty() || message.trim().isEmpty()) {
@@ -744,21 +2834,359 @@ class EmailNotification implements Notifiable {
             msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
             msg.setSubject(subject);
             msg.setText(message);
-            Transport.send(msg);
+            if (transportPool != null) {
+                transportPool.send(msg);
+            } else {
+                Transport.send(msg);
+            }
             System.out.println("Email sent to " + to + ": " + message);
         } catch (MessagingException e) {
             throw new RpmsException("EMAIL_ERROR", "Failed to send email", e);
         }
     }
-}
 
-class SMSNotification implements Notifiable {
-    @Override
-    public void sendNotification(String to, String subject, String message) throws RpmsException {
-        if (to == null || message == null || to.trim().isEmpty() || message.trim().isEmpty()) {
-            throw new RpmsException("INVALID_INPUT", "SMS fields cannot be null or empty");
-        }
-        System.out.println("SMS sent to " + to + ": " + message);
+    @Override
+    public void close() {
+        if (transportPool != null) {
+            transportPool.close();
+        }
+    }
+}
+
+class SMSNotification implements Notifiable {
+    @Override
+    public void sendNotification(String to, String subject, String message) throws RpmsException {
+        if (to == null || message == null || to.trim().isEmpty() || message.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "SMS fields cannot be null or empty");
+        }
+        System.out.println("SMS sent to " + to + ": " + message);
+    }
+}
+
+class OutboundMessage {
+    private final long id;
+    private final String to;
+    private final String subject;
+    private final String message;
+    private final long enqueuedAt;
+    private final CompletableFuture<Void> delivery = new CompletableFuture<>();
+    private int attempts;
+    private long nextAttemptAt;
+
+    public OutboundMessage(long id, String to, String subject, String message, long enqueuedAt) {
+        this.id = id;
+        this.to = to;
+        this.subject = subject;
+        this.message = message;
+        this.enqueuedAt = enqueuedAt;
+        this.nextAttemptAt = enqueuedAt;
+    }
+
+    public long getId() { return id; }
+    public String getTo() { return to; }
+    public String getSubject() { return subject; }
+    public String getMessage() { return message; }
+    public long getEnqueuedAt() { return enqueuedAt; }
+    public int getAttempts() { return attempts; }
+    public long getNextAttemptAt() { return nextAttemptAt; }
+    public CompletableFuture<Void> getDelivery() { return delivery; }
+
+    public void scheduleRetry(long now, long delay) {
+        attempts++;
+        nextAttemptAt = now + delay;
+    }
+}
+
+class OutboundNotificationQueue implements Notifiable, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(OutboundNotificationQueue.class.getName());
+    private static final long BASE_BACKOFF_MILLIS = 1_000;
+    private static final long MAX_BACKOFF_MILLIS = 300_000;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final int MAX_BATCH = 20;
+    // alerts go out on their own, ahead of anything queued for the same recipient, never inside a digest
+    private static final Set<String> URGENT_SUBJECTS = Set.of(AlertService.ALERT_SUBJECT);
+
+    private Notifiable delegate;
+    private final Path journalFile;
+    private final BufferedWriter journal;
+    private final LinkedHashMap<String, ArrayDeque<OutboundMessage>> pending = new LinkedHashMap<>();
+    // recipient -> the delegate its in-flight batch is being sent through
+    private final Map<String, Notifiable> inFlight = new HashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong deadLetters = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private long nextId = 1;
+    private int depth;
+    private volatile boolean running = true;
+
+    public OutboundNotificationQueue(Notifiable delegate, Path journalFile, int workerCount) throws RpmsException {
+        if (delegate == null || journalFile == null || workerCount <= 0) {
+            throw new RpmsException("INVALID_INPUT", "Queue delegate, journal file and a positive worker count are required");
+        }
+        this.delegate = delegate;
+        this.journalFile = journalFile;
+        try {
+            replay();
+            this.journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RpmsException("QUEUE_ERROR", "Failed to open notification journal " + journalFile, e);
+        }
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::deliverLoop, "notification-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @Override
+    public void sendNotification(String to, String subject, String message) throws RpmsException {
+        deliver(to, subject, message);
+    }
+
+    @Override
+    public CompletableFuture<Void> deliver(String to, String subject, String message) throws RpmsException {
+        if (to == null || subject == null || message == null || to.trim().isEmpty() || message.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "Notification fields cannot be null or empty");
+        }
+        if (!running) {
+            throw new RpmsException("QUEUE_ERROR", "Notification queue is closed");
+        }
+        synchronized (pending) {
+            OutboundMessage queued = new OutboundMessage(nextId++, to, subject, message, System.currentTimeMillis());
+            writeJournal("E", queued.getId(), encode(to), encode(subject), encode(message));
+            pending.computeIfAbsent(to, k -> new ArrayDeque<>()).add(queued);
+            depth++;
+            pending.notifyAll();
+            return queued.getDelivery();
+        }
+    }
+
+    public int getDepth() {
+        synchronized (pending) {
+            return depth;
+        }
+    }
+
+    // Swaps the notifier without replaying the journal, so nothing already in flight is sent twice.
+    // Returns the previous notifier once no batch is still being sent through it.
+    public Notifiable replaceDelegate(Notifiable replacement) throws RpmsException {
+        if (replacement == null) {
+            throw new RpmsException("INVALID_INPUT", "Replacement notifier cannot be null");
+        }
+        synchronized (pending) {
+            Notifiable previous = delegate;
+            delegate = replacement;
+            try {
+                while (inFlight.containsValue(previous)) {
+                    pending.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RpmsException("QUEUE_ERROR", "Interrupted while waiting for in-flight notifications", e);
+            }
+            return previous;
+        }
+    }
+
+    public long getDelivered() { return delivered.get(); }
+    public long getRetries() { return retries.get(); }
+    public long getDeadLetters() { return deadLetters.get(); }
+
+    public double getAverageDeliveryLatencyMillis() {
+        long count = delivered.get();
+        return count == 0 ? 0 : (double) totalLatencyMillis.get() / count;
+    }
+
+    public String getStats() {
+        return String.format("Queue Depth: %d\nDelivered: %d\nRetries: %d\nDead Letters: %d\nAverage Delivery Latency: %.1f ms",
+                getDepth(), getDelivered(), getRetries(), getDeadLetters(), getAverageDeliveryLatencyMillis());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        synchronized (pending) {
+            pending.notifyAll();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (pending) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOGGER.warning("Failed to close notification journal: " + e.getMessage());
+            }
+        }
+    }
+
+    private void deliverLoop() {
+        while (running) {
+            List<OutboundMessage> batch;
+            try {
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == null) {
+                continue;
+            }
+            OutboundMessage first = batch.get(0);
+            Notifiable sender;
+            synchronized (pending) {
+                sender = inFlight.get(first.getTo());
+            }
+            try {
+                if (batch.size() == 1) {
+                    sender.sendNotification(first.getTo(), first.getSubject(), first.getMessage());
+                } else {
+                    StringBuilder body = new StringBuilder();
+                    for (OutboundMessage m : batch) {
+                        body.append("[").append(m.getSubject()).append("]\n").append(m.getMessage()).append("\n\n");
+                    }
+                    sender.sendNotification(first.getTo(), batch.size() + " notifications from RPMS", body.toString().trim());
+                }
+                complete(batch, "A");
+            } catch (RpmsException | RuntimeException e) {
+                retry(batch, e);
+            }
+        }
+    }
+
+    private List<OutboundMessage> takeBatch() throws InterruptedException {
+        synchronized (pending) {
+            long now = System.currentTimeMillis();
+            long wakeAt = Long.MAX_VALUE;
+            for (Map.Entry<String, ArrayDeque<OutboundMessage>> entry : pending.entrySet()) {
+                if (inFlight.containsKey(entry.getKey())) {
+                    continue;
+                }
+                List<OutboundMessage> batch = new ArrayList<>();
+                for (OutboundMessage m : entry.getValue()) {
+                    if (m.getNextAttemptAt() > now) {
+                        wakeAt = Math.min(wakeAt, m.getNextAttemptAt());
+                    } else if (URGENT_SUBJECTS.contains(m.getSubject())) {
+                        batch = new ArrayList<>(List.of(m));
+                        break;
+                    } else if (batch.size() < MAX_BATCH) {
+                        batch.add(m);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    inFlight.put(entry.getKey(), delegate);
+                    return batch;
+                }
+            }
+            if (running) {
+                pending.wait(wakeAt == Long.MAX_VALUE ? 1_000 : Math.max(1, wakeAt - now));
+            }
+            return null;
+        }
+    }
+
+    private void complete(List<OutboundMessage> batch, String record) {
+        long now = System.currentTimeMillis();
+        synchronized (pending) {
+            String to = batch.get(0).getTo();
+            ArrayDeque<OutboundMessage> queue = pending.get(to);
+            for (OutboundMessage m : batch) {
+                queue.remove(m);
+                depth--;
+                writeJournal(record, m.getId());
+                if ("A".equals(record)) {
+                    delivered.incrementAndGet();
+                    totalLatencyMillis.addAndGet(now - m.getEnqueuedAt());
+                    m.getDelivery().complete(null);
+                } else {
+                    m.getDelivery().completeExceptionally(
+                            new RpmsException("QUEUE_ERROR", "Gave up after " + MAX_ATTEMPTS + " attempts"));
+                }
+            }
+            if (queue.isEmpty()) {
+                pending.remove(to);
+            }
+            inFlight.remove(to);
+            pending.notifyAll();
+        }
+    }
+
+    private void retry(List<OutboundMessage> batch, Exception cause) {
+        if (batch.get(0).getAttempts() + 1 >= MAX_ATTEMPTS) {
+            LOGGER.severe("Giving up on " + batch.size() + " notification(s) to " + batch.get(0).getTo() + ": " + cause.getMessage());
+            deadLetters.addAndGet(batch.size());
+            complete(batch, "D");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (pending) {
+            for (OutboundMessage m : batch) {
+                long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(m.getAttempts(), 20));
+                m.scheduleRetry(now, delay);
+                retries.incrementAndGet();
+            }
+            inFlight.remove(batch.get(0).getTo());
+            pending.notifyAll();
+        }
+    }
+
+    private void writeJournal(String type, Object... fields) {
+        try {
+            StringBuilder line = new StringBuilder(type);
+            for (Object field : fields) {
+                line.append('|').append(field);
+            }
+            journal.write(line.toString());
+            journal.newLine();
+            journal.flush();
+        } catch (IOException e) {
+            LOGGER.severe("Failed to write notification journal " + journalFile + ": " + e.getMessage());
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        Map<Long, OutboundMessage> live = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\\|");
+            try {
+                long id = Long.parseLong(parts[1]);
+                nextId = Math.max(nextId, id + 1);
+                if ("E".equals(parts[0]) && parts.length == 5) {
+                    live.put(id, new OutboundMessage(id, decode(parts[2]), decode(parts[3]), decode(parts[4]), System.currentTimeMillis()));
+                } else {
+                    live.remove(id);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warning("Skipping corrupt notification journal entry: " + line);
+            }
+        }
+        List<String> compacted = new ArrayList<>();
+        for (OutboundMessage m : live.values()) {
+            pending.computeIfAbsent(m.getTo(), k -> new ArrayDeque<>()).add(m);
+            depth++;
+            compacted.add("E|" + m.getId() + "|" + encode(m.getTo()) + "|" + encode(m.getSubject()) + "|" + encode(m.getMessage()));
+        }
+        Path tmp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        Files.write(tmp, compacted, StandardCharsets.UTF_8);
+        Files.move(tmp, journalFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String encode(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+        return new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
     }
 }
 
@@ -778,40 +3206,266 @@ class NotificationService {
         emailNotifier.sendNotification(email, subject, message);
     }
 
+    public CompletableFuture<Void> deliverEmailAlert(String email, String subject, String message) throws RpmsException {
+        return emailNotifier.deliver(email, subject, message);
+    }
+
     public void sendSMSAlert(String phone, String subject, String message) throws RpmsException {
         smsNotifier.sendNotification(phone, subject, message);
     }
 }
 
-class ReminderService {
-    private List<Appointment> appointments = new ArrayList<>();
-    private List<Prescription> prescriptions = new ArrayList<>();
-    private NotificationService notificationService;
+class TimerEntry<T> {
+    private final T payload;
+    private final long expirationTick;
+    TimerEntry<T> prev;
+    TimerEntry<T> next;
+    boolean scheduled;
+
+    public TimerEntry(T payload, long expirationTick) {
+        this.payload = payload;
+        this.expirationTick = expirationTick;
+    }
+
+    public T getPayload() { return payload; }
+    public long getExpirationTick() { return expirationTick; }
+}
+
+class HierarchicalTimingWheel<T> {
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long[] spans = new long[LEVELS + 1];
+    private final TimerEntry<T>[][] buckets;
+    private long currentTick;
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) throws RpmsException {
+        if (tickMillis <= 0 || wheelSize < 2) {
+            throw new RpmsException("INVALID_INPUT", "Timing wheel needs a positive tick and at least two slots");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTick = startMillis / tickMillis;
+        spans[0] = 1;
+        for (int level = 1; level <= LEVELS; level++) {
+            spans[level] = spans[level - 1] * wheelSize;
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        TimerEntry<T>[][] table = new TimerEntry[LEVELS][wheelSize];
+        buckets = table;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < wheelSize; slot++) {
+                TimerEntry<T> sentinel = new TimerEntry<>(null, -1);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                buckets[level][slot] = sentinel;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Returns null when the deadline is already due; the caller should fire it directly.
+    public synchronized TimerEntry<T> schedule(T payload, long dueMillis) {
+        long tick = Math.max(dueMillis / tickMillis, currentTick + 1);
+        if (dueMillis <= currentTick * tickMillis) {
+            return null;
+        }
+        TimerEntry<T> entry = new TimerEntry<>(payload, tick);
+        insert(entry);
+        size++;
+        return entry;
+    }
+
+    public synchronized boolean cancel(TimerEntry<T> entry) {
+        if (entry == null || !entry.scheduled) {
+            return false;
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if (currentTick % spans[level] == 0) {
+                    TimerEntry<T> sentinel = buckets[level][(int) ((currentTick / spans[level]) % wheelSize)];
+                    while (sentinel.next != sentinel) {
+                        TimerEntry<T> entry = sentinel.next;
+                        unlink(entry);
+                        insert(entry);
+                    }
+                }
+            }
+            TimerEntry<T> sentinel = buckets[0][(int) (currentTick % wheelSize)];
+            while (sentinel.next != sentinel) {
+                TimerEntry<T> entry = sentinel.next;
+                unlink(entry);
+                size--;
+                expired.add(entry.getPayload());
+            }
+        }
+        return expired;
+    }
+
+    private void insert(TimerEntry<T> entry) {
+        long delta = entry.getExpirationTick() - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= spans[level + 1]) {
+            level++;
+        }
+        long tick = Math.min(entry.getExpirationTick(), currentTick + spans[LEVELS] - 1);
+        TimerEntry<T> sentinel = buckets[level][(int) ((tick / spans[level]) % wheelSize)];
+        entry.prev = sentinel.prev;
+        entry.next = sentinel;
+        sentinel.prev.next = entry;
+        sentinel.prev = entry;
+        entry.scheduled = true;
+    }
+
+    private void unlink(TimerEntry<T> entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+        entry.scheduled = false;
+    }
+}
+
+class ScheduledReminder {
+    private final Appointment appointment;
+    private final Prescription prescription;
+
+    public ScheduledReminder(Appointment appointment) {
+        this.appointment = appointment;
+        this.prescription = null;
+    }
+
+    public ScheduledReminder(Prescription prescription) {
+        this.appointment = null;
+        this.prescription = prescription;
+    }
+
+    public Appointment getAppointment() { return appointment; }
+    public Prescription getPrescription() { return prescription; }
+}
+
+class ReminderService implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ReminderService.class.getName());
+    private static final long TICK_MILLIS = 1_000;
+    private static final int WHEEL_SIZE = 256;
+
+    // only what still has a reminder coming (plus prescriptions without a recurrence, which are
+    // reminded manually); entries leave when their last reminder fires or is cancelled
+    private List<Appointment> appointments = new CopyOnWriteArrayList<>();
+    private List<Prescription> prescriptions = new CopyOnWriteArrayList<>();
+    private volatile NotificationService notificationService;
+    private final HierarchicalTimingWheel<ScheduledReminder> wheel;
+    private final Map<String, TimerEntry<ScheduledReminder>> scheduled = new ConcurrentHashMap<>();
+    private final long appointmentLeadMillis;
+    private ScheduledExecutorService ticker;
 
     public ReminderService(NotificationService notificationService) throws RpmsException {
+        this(notificationService, TimeUnit.HOURS.toMillis(24));
+    }
+
+    public ReminderService(NotificationService notificationService, long appointmentLeadMillis) throws RpmsException {
+        if (notificationService == null) {
+            throw new RpmsException("INVALID_INPUT", "Notification service cannot be null");
+        }
+        if (appointmentLeadMillis < 0) {
+            throw new RpmsException("INVALID_INPUT", "Reminder lead time cannot be negative");
+        }
+        this.notificationService = notificationService;
+        this.appointmentLeadMillis = appointmentLeadMillis;
+        this.wheel = new HierarchicalTimingWheel<>(TICK_MILLIS, WHEEL_SIZE, System.currentTimeMillis());
+    }
+
+    public void setNotificationService(NotificationService notificationService) throws RpmsException {
         if (notificationService == null) {
             throw new RpmsException("INVALID_INPUT", "Notification service cannot be null");
         }
         this.notificationService = notificationService;
     }
 
-    public void addAppointment(Appointment appointment) throws RpmsException {
+    public int getPendingReminders() {
+        return wheel.size();
+    }
+
+    public synchronized void start() {
+        if (ticker == null) {
+            ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "reminder-ticker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(() -> fireDue(System.currentTimeMillis()), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ticker != null) {
+            ticker.shutdown();
+            ticker = null;
+        }
+    }
+
+    // Call once the appointment is approved; approving inside the lead time reminds the patient straight away.
+    public synchronized void addAppointment(Appointment appointment) throws RpmsException {
         if (appointment == null) {
             throw new RpmsException("INVALID_INPUT", "Appointment cannot be null");
         }
-        appointments.add(appointment);
+        long start = appointment.getAppointmentTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (start <= System.currentTimeMillis()) {
+            return;
+        }
+        if (!appointments.contains(appointment)) {
+            appointments.add(appointment);
+        }
+        schedule("A:" + appointment.getAppointmentID(), new ScheduledReminder(appointment), start - appointmentLeadMillis);
     }
 
-    public void addPrescription(Prescription prescription) throws RpmsException {
+    public synchronized void addPrescription(Prescription prescription) throws RpmsException {
         if (prescription == null) {
             throw new RpmsException("INVALID_INPUT", "Prescription cannot be null");
         }
+        prescriptions.removeIf(p -> p.getPrescriptionID().equals(prescription.getPrescriptionID()));
         prescriptions.add(prescription);
+        long due = nextDoseMillis(prescription, System.currentTimeMillis());
+        if (due != Long.MAX_VALUE) {
+            schedule("P:" + prescription.getPrescriptionID(), new ScheduledReminder(prescription), due);
+        }
+    }
+
+    public boolean cancelAppointmentReminder(String appointmentID) {
+        appointments.removeIf(a -> a.getAppointmentID().equals(appointmentID));
+        return wheel.cancel(scheduled.remove("A:" + appointmentID));
+    }
+
+    public int fireDue(long nowMillis) {
+        List<ScheduledReminder> due = wheel.advance(nowMillis);
+        for (ScheduledReminder reminder : due) {
+            fire(reminder, nowMillis);
+        }
+        return due.size();
     }
 
     public void sendAppointmentReminder() throws RpmsException {
-        for (Appointment a : appointments) {
-            if ("Approved".equals(a.getAppointmentStatus())) {
+        sendAppointmentReminder(appointments);
+    }
+
+    public void sendAppointmentReminder(Collection<Appointment> candidates) throws RpmsException {
+        for (Appointment a : candidates) {
+            if (a.getAppointmentStatus() == AppointmentStatus.APPROVED) {
                 String message = "Reminder: Appointment with Dr. " + a.getDoctor().getName() +
                         " on " + a.getAppointmentTime();
                 notificationService.sendEmailAlert(
@@ -834,6 +3488,50 @@ class ReminderService {
             );
         }
     }
+
+    private void schedule(String key, ScheduledReminder reminder, long dueMillis) {
+        TimerEntry<ScheduledReminder> entry = wheel.schedule(reminder, dueMillis);
+        TimerEntry<ScheduledReminder> previous = entry != null ? scheduled.put(key, entry) : scheduled.remove(key);
+        wheel.cancel(previous);
+        if (entry == null) {
+            fire(reminder, System.currentTimeMillis());
+        }
+    }
+
+    private static long nextDoseMillis(Prescription prescription, long afterMillis) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime after = LocalDateTime.ofInstant(Instant.ofEpochMilli(afterMillis), zone);
+        LocalDateTime next = prescription.getRecurrence().nextFireAfter(after);
+        return next == null ? Long.MAX_VALUE : next.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private void fire(ScheduledReminder reminder, long nowMillis) {
+        try {
+            Appointment a = reminder.getAppointment();
+            if (a != null) {
+                scheduled.remove("A:" + a.getAppointmentID());
+                appointments.remove(a);
+                if (a.getAppointmentStatus() == AppointmentStatus.APPROVED) {
+                    notificationService.sendEmailAlert(a.getPatient().getContactInfo(), "Appointment Reminder",
+                            "Reminder: Appointment with Dr. " + a.getDoctor().getName() + " on " + a.getAppointmentTime());
+                }
+                return;
+            }
+            Prescription p = reminder.getPrescription();
+            notificationService.sendEmailAlert(p.getPatient().getContactInfo(), "Medication Reminder",
+                    "Reminder: Take " + p.getMedication() + " (" + p.getDosage() + ") as per schedule: " + p.getSchedule());
+            long due = nextDoseMillis(p, nowMillis);
+            TimerEntry<ScheduledReminder> next = due != Long.MAX_VALUE ? wheel.schedule(reminder, due) : null;
+            if (next != null) {
+                scheduled.put("P:" + p.getPrescriptionID(), next);
+            } else {
+                scheduled.remove("P:" + p.getPrescriptionID());
+                prescriptions.remove(p);
+            }
+        } catch (RpmsException e) {
+            e.log(LOGGER);
+        }
+    }
 }
 
 // Emergency Alert System Classes
@@ -841,21 +3539,461 @@ interface Alertable {
     void triggerAlert(String message) throws RpmsException;
 }
 
+class AlertSuppressor {
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final long windowMillis;
+    private final int maxEntries;
+    private final LinkedHashMap<String, SuppressionState> states = new LinkedHashMap<>();
+    private long suppressedTotal;
+
+    private static class SuppressionState {
+        long lastSentAt;
+        double lastSeverity;
+        int suppressed;
+    }
+
+    public AlertSuppressor(long windowMillis) throws RpmsException {
+        this(windowMillis, DEFAULT_MAX_ENTRIES);
+    }
+
+    public AlertSuppressor(long windowMillis, int maxEntries) throws RpmsException {
+        if (windowMillis <= 0 || maxEntries <= 0) {
+            throw new RpmsException("INVALID_INPUT", "Suppression window and capacity must be positive");
+        }
+        this.windowMillis = windowMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    // Returns -1 to suppress, otherwise the number of alerts coalesced since the last one sent.
+    public synchronized int admit(String patientID, int condition, double severity, long now) {
+        evictExpired(now);
+        String key = patientID + ":" + condition;
+        SuppressionState state = states.get(key);
+        if (state != null && severity <= state.lastSeverity) {
+            state.suppressed++;
+            suppressedTotal++;
+            return -1;
+        }
+        if (state == null) {
+            state = new SuppressionState();
+        } else {
+            states.remove(key);
+        }
+        int coalesced = state.suppressed;
+        state.lastSentAt = now;
+        state.lastSeverity = severity;
+        state.suppressed = 0;
+        states.put(key, state);
+        if (states.size() > maxEntries) {
+            Iterator<SuppressionState> eldest = states.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        return coalesced;
+    }
+
+    public synchronized int size() {
+        return states.size();
+    }
+
+    public synchronized long getSuppressedTotal() {
+        return suppressedTotal;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<SuppressionState> it = states.values().iterator();
+        while (it.hasNext() && now - it.next().lastSentAt >= windowMillis) {
+            it.remove();
+        }
+    }
+}
+
+// Per-recipient result of a fan-out. A recipient is DELIVERED once its notifier confirms the send,
+// QUEUED when a durable queue accepted it but has not delivered it by the deadline (it keeps retrying),
+// TIMED_OUT when the hand-off itself stalled (the sender is interrupted), or FAILED.
+class AlertDispatch {
+    static final String DELIVERED = "DELIVERED";
+    static final String QUEUED = "QUEUED";
+    static final String TIMED_OUT = "TIMED_OUT";
+
+    private final Map<String, CompletableFuture<CompletableFuture<Void>>> handoffs;
+    private final Map<String, Future<?>> senders;
+    private final long deadlineNanos;
+    private final Map<String, String> outcomes = new LinkedHashMap<>();
+
+    public AlertDispatch(Map<String, CompletableFuture<CompletableFuture<Void>>> handoffs, Map<String, Future<?>> senders, long deadlineNanos) {
+        this.handoffs = handoffs;
+        this.senders = senders;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public synchronized boolean await() throws InterruptedException {
+        for (Map.Entry<String, CompletableFuture<CompletableFuture<Void>>> entry : handoffs.entrySet()) {
+            if (!outcomes.containsKey(entry.getKey())) {
+                outcomes.put(entry.getKey(), awaitRecipient(entry.getKey(), entry.getValue()));
+            }
+        }
+        return allDelivered();
+    }
+
+    public synchronized boolean allDelivered() {
+        return outcomes.size() == handoffs.size() && outcomes.values().stream().allMatch(DELIVERED::equals);
+    }
+
+    // true when no recipient has the alert, not even in a queue that will retry it
+    public synchronized boolean isLost() {
+        return outcomes.size() == handoffs.size() &&
+               outcomes.values().stream().noneMatch(o -> DELIVERED.equals(o) || QUEUED.equals(o));
+    }
+
+    public synchronized Map<String, String> getOutcomes() {
+        Map<String, String> snapshot = new LinkedHashMap<>();
+        for (String recipient : handoffs.keySet()) {
+            snapshot.put(recipient, outcomes.getOrDefault(recipient, "PENDING"));
+        }
+        return snapshot;
+    }
+
+    private String awaitRecipient(String recipient, CompletableFuture<CompletableFuture<Void>> handoff) throws InterruptedException {
+        CompletableFuture<Void> delivery;
+        try {
+            delivery = handoff.get(remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            Future<?> sender = senders.get(recipient);
+            if (sender != null) {
+                sender.cancel(true);
+            }
+            return TIMED_OUT;
+        } catch (ExecutionException e) {
+            return failure(e.getCause());
+        }
+        try {
+            delivery.get(remainingNanos(), TimeUnit.NANOSECONDS);
+            return DELIVERED;
+        } catch (TimeoutException e) {
+            return QUEUED;
+        } catch (ExecutionException e) {
+            return failure(e.getCause());
+        }
+    }
+
+    private long remainingNanos() {
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    private static String failure(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return "FAILED: " + cause.getMessage();
+    }
+}
+
 class AlertService {
+    static final String ALERT_SUBJECT = "Emergency Alert";
+
+    private static final Logger LOGGER = Logger.getLogger(AlertService.class.getName());
+    private static final long DEFAULT_DEADLINE_MILLIS = 10_000;
+    // Every recipient of an alert gets its own sender thread, up to this cap, so delivery time stays at one
+    // send latency for a clinic's worth of doctors. The cap keeps a stalled SMTP server from piling up
+    // one live thread per timed-out send; idle threads exit after 30s.
+    static final int MAX_FAN_OUT_THREADS = 32;
+    private static final ThreadPoolExecutor FAN_OUT = new ThreadPoolExecutor(MAX_FAN_OUT_THREADS, MAX_FAN_OUT_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(256), task -> {
+                Thread thread = new Thread(task, "alert-fan-out");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        FAN_OUT.allowCoreThreadTimeOut(true);
+    }
+
     private NotificationService notificationService;
     private List<String> recipients;
+    private AlertSuppressor suppressor;
+    private long fanOutDeadlineMillis;
 
     public AlertService(NotificationService notificationService, List<String> recipients) throws RpmsException {
+        this(notificationService, recipients, null);
+    }
+
+    public AlertService(NotificationService notificationService, List<String> recipients, AlertSuppressor suppressor) throws RpmsException {
         if (notificationService == null || recipients == null || recipients.isEmpty()) {
             throw new RpmsException("INVALID_INPUT", "Notification service or recipients cannot be null or empty");
         }
         this.notificationService = notificationService;
         this.recipients = new ArrayList<>(recipients);
+        this.suppressor = suppressor;
+    }
+
+    public void setFanOutDeadline(long deadlineMillis) throws RpmsException {
+        if (deadlineMillis < 0) {
+            throw new RpmsException("INVALID_INPUT", "Fan-out deadline cannot be negative");
+        }
+        this.fanOutDeadlineMillis = deadlineMillis;
     }
 
     public void sendAlert(String message) throws RpmsException {
+        if (fanOutDeadlineMillis > 0) {
+            AlertDispatch dispatch = deliver(message);
+            if (dispatch.isLost()) {
+                throw new RpmsException("ALERT_DELIVERY_ERROR", "Alert reached no recipient: " + dispatch.getOutcomes());
+            }
+            return;
+        }
+        for (String recipient : recipients) {
+            notificationService.sendEmailAlert(recipient, ALERT_SUBJECT, message);
+        }
+    }
+
+    // Fans out within the configured deadline and reports each recipient's outcome instead of throwing
+    // when delivery is only degraded.
+    public AlertDispatch deliver(String message) throws RpmsException {
+        AlertDispatch dispatch = sendAlertAsync(message, fanOutDeadlineMillis > 0 ? fanOutDeadlineMillis : DEFAULT_DEADLINE_MILLIS);
+        try {
+            if (!dispatch.await()) {
+                LOGGER.warning("Alert delivery degraded: " + dispatch.getOutcomes());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpmsException("ALERT_DELIVERY_ERROR", "Interrupted while delivering alert", e);
+        }
+        return dispatch;
+    }
+
+    public AlertDispatch sendAlertAsync(String message, long deadlineMillis) throws RpmsException {
+        if (message == null || message.trim().isEmpty() || deadlineMillis <= 0) {
+            throw new RpmsException("INVALID_INPUT", "Alert message and a positive deadline are required");
+        }
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        Map<String, CompletableFuture<CompletableFuture<Void>>> handoffs = new LinkedHashMap<>();
+        Map<String, Future<?>> senders = new HashMap<>();
         for (String recipient : recipients) {
-            notificationService.sendEmailAlert(recipient, "Emergency Alert", message);
+            CompletableFuture<CompletableFuture<Void>> handoff = new CompletableFuture<>();
+            handoffs.put(recipient, handoff);
+            try {
+                senders.put(recipient, FAN_OUT.submit(() -> {
+                    try {
+                        handoff.complete(notificationService.deliverEmailAlert(recipient, ALERT_SUBJECT, message));
+                    } catch (RpmsException | RuntimeException e) {
+                        handoff.completeExceptionally(e);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                handoff.completeExceptionally(new RpmsException("ALERT_DELIVERY_ERROR", "Alert fan-out is saturated", e));
+            }
+        }
+        return new AlertDispatch(handoffs, senders, deadlineNanos);
+    }
+
+    public boolean sendAlert(String patientID, int condition, double severity, String message) throws RpmsException {
+        if (suppressor != null) {
+            int coalesced = suppressor.admit(patientID, condition, severity, System.currentTimeMillis());
+            if (coalesced < 0) {
+                return false;
+            }
+            if (coalesced > 0) {
+                message += " (" + coalesced + " similar alert(s) suppressed)";
+            }
+        }
+        sendAlert(message);
+        return true;
+    }
+}
+
+class ThresholdPlan {
+    static final ThresholdPlan ADULT = new ThresholdPlan(
+            new double[] {60, 90, 36.1, 95},
+            new double[] {100, 140, 37.2, Double.POSITIVE_INFINITY});
+
+    private final double[] low;
+    private final double[] high;
+
+    public ThresholdPlan(double[] low, double[] high) {
+        this.low = low.clone();
+        this.high = high.clone();
+    }
+
+    public boolean isWithin(VitalSign vital) {
+        return vital.getHeartRate() >= low[0] && vital.getHeartRate() <= high[0] &&
+               vital.getBloodPressure() >= low[1] && vital.getBloodPressure() <= high[1] &&
+               vital.getBodyTemperature() >= low[2] && vital.getBodyTemperature() <= high[2] &&
+               vital.getOxygenLevel() >= low[3] && vital.getOxygenLevel() <= high[3];
+    }
+
+    public double severity(VitalSign vital) {
+        return excess(vital.getHeartRate(), 0) + excess(vital.getBloodPressure(), 1) +
+               excess(vital.getBodyTemperature(), 2) + excess(vital.getOxygenLevel(), 3);
+    }
+
+    private double excess(double value, int field) {
+        if (value < low[field]) {
+            return (low[field] - value) / Math.max(Math.abs(low[field]), 1);
+        }
+        if (value > high[field]) {
+            return (value - high[field]) / Math.max(Math.abs(high[field]), 1);
+        }
+        return 0;
+    }
+
+    public int violations(VitalSign vital) {
+        int mask = 0;
+        if (vital.getHeartRate() < low[0] || vital.getHeartRate() > high[0]) mask |= 1;
+        if (vital.getBloodPressure() < low[1] || vital.getBloodPressure() > high[1]) mask |= 1 << 1;
+        if (vital.getBodyTemperature() < low[2] || vital.getBodyTemperature() > high[2]) mask |= 1 << 2;
+        if (vital.getOxygenLevel() < low[3] || vital.getOxygenLevel() > high[3]) mask |= 1 << 3;
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HR %.1f-%.1f, BP %.1f-%.1f, Temp %.1f-%.1f, O2 %.1f-%.1f",
+                low[0], high[0], low[1], high[1], low[2], high[2], low[3], high[3]);
+    }
+}
+
+class ThresholdRules {
+    private static final int COLUMNS = 12;
+
+    private final int[] minAges;
+    private final int[] maxAges;
+    private final String[] wards;
+    private final String[] conditions;
+    private final ThresholdPlan[] plans;
+    // keyed by patient ID; an entry is reused only while the patient's birth date, ward and condition
+    // still match, and a new rule set starts with an empty cache
+    private final Map<String, CachedPlan> cache = new ConcurrentHashMap<>();
+
+    private static class CachedPlan {
+        final ThresholdPlan plan;
+        final String ward;
+        final String condition;
+        final LocalDate birthDate;
+        final long fromDay;
+        final long untilDay;
+
+        CachedPlan(ThresholdPlan plan, String ward, String condition, LocalDate birthDate, long fromDay, long untilDay) {
+            this.plan = plan;
+            this.ward = ward;
+            this.condition = condition;
+            this.birthDate = birthDate;
+            this.fromDay = fromDay;
+            this.untilDay = untilDay;
+        }
+    }
+
+    private ThresholdRules(List<int[]> ages, List<String[]> cohorts, List<ThresholdPlan> plans) {
+        int n = plans.size();
+        this.minAges = new int[n];
+        this.maxAges = new int[n];
+        this.wards = new String[n];
+        this.conditions = new String[n];
+        for (int i = 0; i < n; i++) {
+            minAges[i] = ages.get(i)[0];
+            maxAges[i] = ages.get(i)[1];
+            wards[i] = cohorts.get(i)[0];
+            conditions[i] = cohorts.get(i)[1];
+        }
+        this.plans = plans.toArray(new ThresholdPlan[0]);
+    }
+
+    public static ThresholdRules defaults() {
+        return new ThresholdRules(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
+    // One rule per line, first match wins:
+    // minAge,maxAge,ward,condition,hrMin,hrMax,bpMin,bpMax,tempMin,tempMax,o2Min,o2Max
+    // "*" matches any ward/condition or leaves a bound open.
+    public static ThresholdRules load(Path file) throws RpmsException {
+        if (file == null) {
+            throw new RpmsException("INVALID_INPUT", "Threshold rules file cannot be null");
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RpmsException("RULES_ERROR", "Failed to read threshold rules " + file, e);
+        }
+        List<int[]> ages = new ArrayList<>();
+        List<String[]> cohorts = new ArrayList<>();
+        List<ThresholdPlan> plans = new ArrayList<>();
+        for (int lineNo = 1; lineNo <= lines.size(); lineNo++) {
+            String line = lines.get(lineNo - 1).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] cols = line.split("\\s*,\\s*");
+            if (cols.length != COLUMNS) {
+                throw new RpmsException("RULES_ERROR", "Line " + lineNo + ": expected " + COLUMNS + " columns");
+            }
+            try {
+                int[] ageRange = {
+                        "*".equals(cols[0]) ? 0 : Integer.parseInt(cols[0]),
+                        "*".equals(cols[1]) ? Integer.MAX_VALUE : Integer.parseInt(cols[1])};
+                if (ageRange[0] < 0 || ageRange[0] > ageRange[1]) {
+                    throw new RpmsException("RULES_ERROR", "Line " + lineNo + ": minimum age must be between 0 and the maximum age");
+                }
+                double[] low = new double[4];
+                double[] high = new double[4];
+                for (int f = 0; f < 4; f++) {
+                    low[f] = "*".equals(cols[4 + 2 * f]) ? Double.NEGATIVE_INFINITY : Double.parseDouble(cols[4 + 2 * f]);
+                    high[f] = "*".equals(cols[5 + 2 * f]) ? Double.POSITIVE_INFINITY : Double.parseDouble(cols[5 + 2 * f]);
+                    if (Double.isNaN(low[f]) || Double.isNaN(high[f]) || low[f] > high[f]) {
+                        throw new RpmsException("RULES_ERROR", "Line " + lineNo + ": " + VitalField.values()[f].getLabel() +
+                                " lower bound must not exceed its upper bound");
+                    }
+                }
+                ages.add(ageRange);
+                cohorts.add(new String[] {"*".equals(cols[2]) ? null : cols[2], "*".equals(cols[3]) ? null : cols[3]});
+                plans.add(new ThresholdPlan(low, high));
+            } catch (NumberFormatException e) {
+                throw new RpmsException("RULES_ERROR", "Line " + lineNo + ": invalid number", e);
+            }
+        }
+        return new ThresholdRules(ages, cohorts, plans);
+    }
+
+    public int size() {
+        return plans.length;
+    }
+
+    public ThresholdPlan planFor(Patient patient) {
+        return planFor(patient, LocalDate.now().toEpochDay());
+    }
+
+    public ThresholdPlan planFor(Patient patient, long epochDay) {
+        if (patient == null || plans.length == 0) {
+            return ThresholdPlan.ADULT;
+        }
+        CachedPlan cached = cache.get(patient.getUserID());
+        if (cached != null && epochDay >= cached.fromDay && epochDay < cached.untilDay && cached.birthDate.equals(patient.getBirthDate()) &&
+            Objects.equals(cached.ward, patient.getWard()) && Objects.equals(cached.condition, patient.getCondition())) {
+            return cached.plan;
+        }
+        int age = Period.between(patient.getBirthDate(), LocalDate.ofEpochDay(epochDay)).getYears();
+        ThresholdPlan plan = ThresholdPlan.ADULT;
+        for (int i = 0; i < plans.length; i++) {
+            if (age >= minAges[i] && age <= maxAges[i] &&
+                (wards[i] == null || wards[i].equalsIgnoreCase(patient.getWard())) &&
+                (conditions[i] == null || conditions[i].equalsIgnoreCase(patient.getCondition()))) {
+                plan = plans[i];
+                break;
+            }
+        }
+        cache.put(patient.getUserID(), new CachedPlan(plan, patient.getWard(), patient.getCondition(), patient.getBirthDate(),
+                patient.getBirthDate().plusYears(age).toEpochDay(), patient.getBirthDate().plusYears(age + 1L).toEpochDay()));
+        return plan;
+    }
+
+    public boolean isWithinThreshold(VitalSign vital) {
+        return vital == null || planFor(vital.getPatient(), vital.getCheckupDate().toEpochDay()).isWithin(vital);
+    }
+
+    public void invalidate(String patientID) {
+        if (patientID != null) {
+            cache.remove(patientID);
         }
     }
 }
@@ -864,34 +4002,46 @@ abstract class EmergencyAlert implements Alertable {
     protected VitalSign vital;
     protected AlertService alertService;
     protected Patient patient;
+    protected ThresholdRules thresholdRules;
+    protected int condition;
+    protected double severity;
+    protected boolean alertSent;
 
     public EmergencyAlert(Patient patient, VitalSign vital, AlertService alertService) throws RpmsException {
+        this(patient, vital, alertService, ThresholdRules.defaults());
+    }
+
+    public EmergencyAlert(Patient patient, VitalSign vital, AlertService alertService, ThresholdRules thresholdRules) throws RpmsException {
         if (patient == null || alertService == null) {
             throw new RpmsException("INVALID_INPUT", "Patient or alert service cannot be null");
         }
         this.patient = patient;
         this.vital = vital;
         this.alertService = alertService;
+        this.thresholdRules = thresholdRules != null ? thresholdRules : ThresholdRules.defaults();
     }
 
     public static boolean isWithinThreshold(VitalSign vital) {
-        if (vital == null) return true;
-        return (vital.getHeartRate() >= 60 && vital.getHeartRate() <= 100) &&
-               (vital.getBloodPressure() >= 90 && vital.getBloodPressure() <= 140) &&
-               (vital.getBodyTemperature() >= 36.1 && vital.getBodyTemperature() <= 37.2) &&
-               (vital.getOxygenLevel() >= 95);
+        return vital == null || ThresholdPlan.ADULT.isWithin(vital);
     }
 
-    public void checkVitals() throws RpmsException {
+    // Returns true only when an alert actually went out (not within range, not suppressed).
+    public boolean checkVitals() throws RpmsException {
         if (vital == null || patient == null) {
             throw new RpmsException("INVALID_VITAL", "Vital or patient information missing");
         }
-        if (!isWithinThreshold(vital)) {
+        alertSent = false;
+        ThresholdPlan plan = thresholdRules.planFor(patient, vital.getCheckupDate().toEpochDay());
+        if (!plan.isWithin(vital)) {
+            condition = plan.violations(vital);
+            severity = plan.severity(vital);
             String message = "Alert! Patient " + patient.getUserID() + "'s vital signs are abnormal: " +
                     "HR=" + vital.getHeartRate() + ", BP=" + vital.getBloodPressure() +
                     ", Temp=" + vital.getBodyTemperature() + ", O2=" + vital.getOxygenLevel();
+            alertSent = true;
             triggerAlert(message);
         }
+        return alertSent;
     }
 }
 
@@ -900,6 +4050,44 @@ class VitalAlert extends EmergencyAlert {
         super(patient, vital, alertService);
     }
 
+    public VitalAlert(Patient patient, VitalSign vital, AlertService alertService, ThresholdRules thresholdRules) throws RpmsException {
+        super(patient, vital, alertService, thresholdRules);
+    }
+
+    @Override
+    public void triggerAlert(String message) throws RpmsException {
+        alertSent = alertService.sendAlert(patient.getUserID(), condition, severity, message);
+    }
+}
+
+class BatchVitalAlert implements Alertable {
+    private final Map<String, List<VitalSign>> abnormalByPatient;
+    private final AlertService alertService;
+
+    public BatchVitalAlert(Map<String, List<VitalSign>> abnormalByPatient, AlertService alertService) throws RpmsException {
+        if (abnormalByPatient == null || alertService == null) {
+            throw new RpmsException("INVALID_INPUT", "Abnormal vitals or alert service cannot be null");
+        }
+        this.abnormalByPatient = abnormalByPatient;
+        this.alertService = alertService;
+    }
+
+    public int checkVitals() throws RpmsException {
+        for (Map.Entry<String, List<VitalSign>> entry : abnormalByPatient.entrySet()) {
+            StringBuilder message = new StringBuilder("Alert! Patient ").append(entry.getKey())
+                    .append(" has ").append(entry.getValue().size()).append(" abnormal vital reading(s):");
+            for (VitalSign vital : entry.getValue()) {
+                message.append("\n").append(vital.getCheckupDate())
+                        .append(": HR=").append(vital.getHeartRate())
+                        .append(", BP=").append(vital.getBloodPressure())
+                        .append(", Temp=").append(vital.getBodyTemperature())
+                        .append(", O2=").append(vital.getOxygenLevel());
+            }
+            triggerAlert(message.toString());
+        }
+        return abnormalByPatient.size();
+    }
+
     @Override
     public void triggerAlert(String message) throws RpmsException {
         alertService.sendAlert(message);
@@ -922,13 +4110,249 @@ class PanicButton implements Alertable {
 
     @Override
     public void triggerAlert(String message) throws RpmsException {
-        message = "Emergency! Patient " + patient.getUserID() + " needs immediate attention.";
-        alertService.sendAlert(message);
+        pressPanicButton();
+    }
+
+    // The in-app alert is raised first; e-mail delivery problems come back as outcomes, not errors.
+    public AlertDispatch pressPanicButton() throws RpmsException {
+        String message = "Emergency! Patient " + patient.getUserID() + " needs immediate attention.";
         doctor.receiveAlert(message);
+        return alertService.deliver(message);
+    }
+}
+
+// Vitals Streaming Pipeline Classes
+interface VitalsStep {
+    boolean apply(VitalSign vital) throws RpmsException;
+}
+
+class VitalsStage extends SubmissionPublisher<VitalSign> implements Flow.Processor<VitalSign, VitalSign> {
+    private static final Logger LOGGER = Logger.getLogger(VitalsStage.class.getName());
+
+    private final String name;
+    private final VitalsStep step;
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private Flow.Subscription subscription;
+
+    public VitalsStage(String name, ExecutorService executor, int bufferSize, VitalsStep step) {
+        super(executor, bufferSize);
+        this.name = name;
+        this.step = step;
+    }
+
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return completed.await(timeout, unit);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(VitalSign vital) {
+        try {
+            if (step.apply(vital) && hasSubscribers()) {
+                submit(vital);
+            }
+        } catch (RpmsException e) {
+            e.log(LOGGER);
+        } catch (RuntimeException e) {
+            LOGGER.severe(name + " failed: " + e.getMessage());
+        } finally {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        closeExceptionally(throwable);
+        completed.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+        completed.countDown();
+    }
+}
+
+class VitalsPipeline implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(VitalsPipeline.class.getName());
+    private static final int DEFAULT_BUFFER = 256;
+    private static final long ALERT_DEADLINE_MILLIS = 10_000;
+
+    private final ExecutorService ingestExecutor = Executors.newFixedThreadPool(4, daemonThreads("vitals-ingest"));
+    private final ExecutorService thresholdExecutor = Executors.newSingleThreadExecutor(daemonThreads("vitals-threshold"));
+    private final ExecutorService dispatchExecutor = Executors.newSingleThreadExecutor(daemonThreads("vitals-dispatch"));
+    private final SubmissionPublisher<VitalSign> ingress;
+    private final VitalsStage thresholdStage;
+    private final VitalsDatabase database;
+    private final Supplier<NotificationService> notificationService;
+    private final Supplier<List<String>> recipients;
+    private final AlertSuppressor suppressor;
+    // newest-worst abnormal reading per patient still waiting for the dispatcher; a slow notifier
+    // folds later breaches into it instead of queueing (or discarding) one alert per reading
+    private final Map<String, VitalSign> pendingAlerts = new ConcurrentHashMap<>();
+    // patients with a fresh entry in pendingAlerts, at most once each; unbounded only by the number of
+    // patients, so the threshold stage never waits on the dispatcher
+    private final Queue<String> dirtyPatients = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong alerted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public VitalsPipeline(VitalsDatabase database, Supplier<NotificationService> notificationService,
+                          Supplier<List<String>> recipients) throws RpmsException {
+        this(database, notificationService, recipients, DEFAULT_BUFFER);
+    }
+
+    public VitalsPipeline(VitalsDatabase database, Supplier<NotificationService> notificationService,
+                          Supplier<List<String>> recipients, int bufferSize) throws RpmsException {
+        this(database, notificationService, recipients, bufferSize, null);
+    }
+
+    public VitalsPipeline(VitalsDatabase database, Supplier<NotificationService> notificationService,
+                          Supplier<List<String>> recipients, int bufferSize, AlertSuppressor suppressor) throws RpmsException {
+        if (database == null || notificationService == null || recipients == null || bufferSize <= 0) {
+            throw new RpmsException("INVALID_INPUT", "Pipeline database, notifier, recipients and buffer size are required");
+        }
+        this.database = database;
+        this.notificationService = notificationService;
+        this.recipients = recipients;
+        this.suppressor = suppressor;
+        ingress = new SubmissionPublisher<>(ingestExecutor, bufferSize);
+        VitalsStage validationStage = new VitalsStage("validation", ingestExecutor, bufferSize, vital -> {
+            if (!isPlausible(vital)) {
+                rejected.incrementAndGet();
+                throw new RpmsException("INVALID_VITAL", "Rejected implausible reading for patient " + vital.getPatient().getUserID());
+            }
+            return true;
+        });
+        VitalsStage storageStage = new VitalsStage("storage", ingestExecutor, bufferSize, vital -> {
+            database.addVitalSign(vital);
+            stored.incrementAndGet();
+            return true;
+        });
+        thresholdStage = new VitalsStage("threshold", thresholdExecutor, bufferSize, vital -> {
+            ThresholdRules rules = database.getThresholdRules();
+            if (rules.isWithinThreshold(vital)) {
+                return false;
+            }
+            boolean[] queued = new boolean[1];
+            pendingAlerts.compute(vital.getPatient().getUserID(), (id, pending) -> {
+                if (pending == null) {
+                    queued[0] = true;
+                    return vital;
+                }
+                return severity(rules, vital) >= severity(rules, pending) ? vital : pending;
+            });
+            if (queued[0]) {
+                dirtyPatients.add(vital.getPatient().getUserID());
+                wakeDispatcher();
+            } else {
+                coalesced.incrementAndGet();
+            }
+            return false;
+        });
+        ingress.subscribe(validationStage);
+        validationStage.subscribe(storageStage);
+        storageStage.subscribe(thresholdStage);
+    }
+
+    public void submit(VitalSign vital) throws RpmsException {
+        if (vital == null) {
+            throw new RpmsException("INVALID_INPUT", "Vital sign cannot be null");
+        }
+        if (ingress.isClosed()) {
+            throw new RpmsException("PIPELINE_CLOSED", "Vitals pipeline is closed");
+        }
+        ingress.submit(vital);
+    }
+
+    public String getStats() {
+        return String.format("Stored: %d\nRejected: %d\nAlerts Sent: %d\nAlerts Coalesced: %d\nIngress Lag: %d",
+                stored.get(), rejected.get(), alerted.get(), coalesced.get(), ingress.estimateMaximumLag());
+    }
+
+    @Override
+    public void close() throws RpmsException {
+        ingress.close();
+        try {
+            // the threshold stage is the only thing that wakes the dispatcher, so once it has completed
+            // the dispatch executor only has the current drain left to finish
+            thresholdStage.awaitCompletion(30, TimeUnit.SECONDS);
+            dispatchExecutor.shutdown();
+            dispatchExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpmsException("PIPELINE_ERROR", "Interrupted while draining vitals pipeline", e);
+        } finally {
+            ingestExecutor.shutdown();
+            thresholdExecutor.shutdown();
+            dispatchExecutor.shutdown();
+        }
+    }
+
+    private void wakeDispatcher() {
+        if (dispatching.compareAndSet(false, true)) {
+            dispatchExecutor.execute(this::dispatchPending);
+        }
+    }
+
+    // Keeps draining on the same thread until nothing is left, so a late wake-up never needs a new task.
+    private void dispatchPending() {
+        do {
+            String patientID;
+            while ((patientID = dirtyPatients.poll()) != null) {
+                VitalSign pending = pendingAlerts.remove(patientID);
+                if (pending == null) {
+                    continue;
+                }
+                try {
+                    dispatch(pending);
+                } catch (RpmsException e) {
+                    e.log(LOGGER);
+                } catch (RuntimeException e) {
+                    LOGGER.severe("dispatch failed: " + e.getMessage());
+                }
+            }
+            dispatching.set(false);
+        } while (!dirtyPatients.isEmpty() && dispatching.compareAndSet(false, true));
+    }
+
+    private void dispatch(VitalSign pending) throws RpmsException {
+        List<String> to = recipients.get();
+        if (to == null || to.isEmpty()) {
+            throw new RpmsException("NO_RECIPIENTS", "No alert recipients for patient " + pending.getPatient().getUserID());
+        }
+        AlertService alertService = new AlertService(notificationService.get(), to, suppressor);
+        alertService.setFanOutDeadline(ALERT_DEADLINE_MILLIS);
+        if (new VitalAlert(pending.getPatient(), pending, alertService, database.getThresholdRules()).checkVitals()) {
+            alerted.incrementAndGet();
+        }
     }
 
-    public void pressPanicButton() throws RpmsException {
-        triggerAlert("");
+    private static double severity(ThresholdRules rules, VitalSign vital) {
+        return rules.planFor(vital.getPatient(), vital.getCheckupDate().toEpochDay()).severity(vital);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger sequence = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static boolean isPlausible(VitalSign vital) {
+        return vital.getHeartRate() > 0 && vital.getHeartRate() < 300 &&
+               vital.getBloodPressure() > 0 && vital.getBloodPressure() < 300 &&
+               vital.getBodyTemperature() > 25 && vital.getBodyTemperature() < 45 &&
+               vital.getOxygenLevel() > 0 && vital.getOxygenLevel() <= 100;
     }
 }
 
@@ -938,7 +4362,9 @@ class ChatMessage {
     private String receiverId;
     private String content;
     private LocalDateTime timestamp;
-    private boolean read;
+    private long messageId = -1;
+    private LocalDateTime storedAt;
+    private final AtomicBoolean read = new AtomicBoolean();
 
     public ChatMessage(String senderId, String receiverId, String content) throws RpmsException {
         if (senderId == null || receiverId == null || content == null ||
@@ -949,15 +4375,28 @@ class ChatMessage {
         this.receiverId = receiverId;
         this.content = content;
         this.timestamp = LocalDateTime.now();
-        this.read = false;
     }
 
     public String getSenderId() { return senderId; }
     public String getReceiverId() { return receiverId; }
     public String getContent() { return content; }
     public LocalDateTime getTimestamp() { return timestamp; }
-    public boolean isRead() { return read; }
-    public void markAsRead() { this.read = true; }
+    public boolean isRead() { return read.get(); }
+
+    // Position in the conversation log, assigned when the server stores the message; -1 until then.
+    public long getMessageId() { return messageId; }
+
+    // Send time, raised where needed so it never goes backwards along the log. Only used as a search
+    // cursor; getTimestamp() keeps the time the sender actually wrote the message.
+    LocalDateTime getStoredAt() { return storedAt; }
+
+    void assignPosition(long messageId, LocalDateTime notBefore) {
+        this.messageId = messageId;
+        this.storedAt = notBefore != null && timestamp.isBefore(notBefore) ? notBefore : timestamp;
+    }
+
+    // Returns true only for the caller that actually moved the message from unread to read.
+    public boolean markAsRead() { return read.compareAndSet(false, true); }
 
     @Override
     public String toString() {
@@ -968,67 +4407,323 @@ class ChatMessage {
 interface ChatService {
     void sendMessage(ChatMessage message) throws RpmsException;
     List<ChatMessage> getMessagesBetween(String user1, String user2) throws RpmsException;
+    List<ChatMessage> getMessagesBefore(String user1, String user2, long beforeId, int limit) throws RpmsException;
+    List<ChatMessage> getMessagesAfter(String user1, String user2, long afterId, int limit) throws RpmsException;
+    List<ChatMessage> getMessagesSince(String user1, String user2, LocalDateTime since, int limit) throws RpmsException;
     List<ChatMessage> getUnreadMessages(String userId) throws RpmsException;
+    void subscribe(String userId, Consumer<ChatMessage> listener) throws RpmsException;
+    boolean unsubscribe(String userId, Consumer<ChatMessage> listener);
+}
+
+class ConversationLog {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private volatile ChatMessage[][] chunks = new ChatMessage[1][CHUNK_SIZE];
+    private volatile int size;
+
+    // Single writer per conversation; the volatile size write publishes the new slot to readers.
+    // Message IDs are log offsets and stored-at times never go backwards, so both can be used as cursors.
+    public synchronized int append(ChatMessage message) {
+        int index = size;
+        ChatMessage[][] current = chunks;
+        message.assignPosition(index, index == 0 ? null : get(current, index - 1).getStoredAt());
+        int chunk = index >>> CHUNK_BITS;
+        if (chunk == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            chunks = current;
+        }
+        if (current[chunk] == null) {
+            current[chunk] = new ChatMessage[CHUNK_SIZE];
+        }
+        current[chunk][index & (CHUNK_SIZE - 1)] = message;
+        size = index + 1;
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Lock-free: readers only look at slots below the size they observed, which are never rewritten.
+    public List<ChatMessage> snapshot() {
+        return page(0, size);
+    }
+
+    // Up to limit messages with IDs below beforeId, oldest first.
+    public List<ChatMessage> before(long beforeId, int limit) throws RpmsException {
+        checkLimit(limit);
+        int end = (int) Math.min(beforeId, size);
+        return page(Math.max(0, end - limit), end);
+    }
+
+    // Up to limit messages with IDs above afterId, oldest first.
+    public List<ChatMessage> after(long afterId, int limit) throws RpmsException {
+        checkLimit(limit);
+        int count = size;
+        int start = (int) Math.max(0, afterId >= count ? count : afterId + 1);
+        return page(start, (int) Math.min(count, (long) start + limit));
+    }
+
+    // Up to limit messages sent at or after the given time, found by binary search over the log.
+    public List<ChatMessage> since(LocalDateTime time, int limit) throws RpmsException {
+        checkLimit(limit);
+        int count = size;
+        ChatMessage[][] current = chunks;
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(current, mid).getStoredAt().isBefore(time)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return page(low, (int) Math.min(count, (long) low + limit));
+    }
+
+    private static void checkLimit(int limit) throws RpmsException {
+        if (limit < 0) {
+            throw new RpmsException("INVALID_INPUT", "Page size cannot be negative");
+        }
+    }
+
+    private List<ChatMessage> page(int start, int end) {
+        ChatMessage[][] current = chunks;
+        List<ChatMessage> result = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            result.add(get(current, i));
+        }
+        return result;
+    }
+
+    private static ChatMessage get(ChatMessage[][] chunks, int index) {
+        return chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+    }
 }
 
 class ChatServer implements ChatService {
-    private Map<String, List<ChatMessage>> messageHistory = new HashMap<>();
+    private static final Logger LOGGER = Logger.getLogger(ChatServer.class.getName());
+    private final Map<String, ConversationLog> messageHistory = new ConcurrentHashMap<>();
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private static final class Mailbox {
+        final List<Consumer<ChatMessage>> listeners = new CopyOnWriteArrayList<>();
+        final Queue<ChatMessage> unread = new ConcurrentLinkedQueue<>();
+        final AtomicInteger unreadCount = new AtomicInteger();
+    }
 
+    // Conversations and mailboxes are independent, so unrelated chats never contend. Every message goes
+    // through the receiver's unread queue and is pushed from there in order, one mailbox at a time; it
+    // only stays unread while nobody is subscribed to take it.
     @Override
-    public synchronized void sendMessage(ChatMessage message) throws RpmsException {
+    public void sendMessage(ChatMessage message) throws RpmsException {
         if (message == null) {
             throw new RpmsException("INVALID_INPUT", "Chat message cannot be null");
         }
         String key = getConversationKey(message.getSenderId(), message.getReceiverId());
-        messageHistory.computeIfAbsent(key, k -> new ArrayList<>()).add(message);
+        messageHistory.computeIfAbsent(key, k -> new ConversationLog()).append(message);
+        Mailbox mailbox = mailboxFor(message.getReceiverId());
+        mailbox.unread.add(message);
+        mailbox.unreadCount.incrementAndGet();
+        if (!mailbox.listeners.isEmpty()) {
+            flush(mailbox);
+        }
+    }
+
+    @Override
+    public void subscribe(String userId, Consumer<ChatMessage> listener) throws RpmsException {
+        if (userId == null || userId.trim().isEmpty() || listener == null) {
+            throw new RpmsException("INVALID_INPUT", "User ID and listener cannot be null");
+        }
+        Mailbox mailbox = mailboxFor(userId);
+        synchronized (mailbox) {
+            mailbox.listeners.add(listener);
+        }
+        flush(mailbox);
+    }
+
+    // Takes the mailbox lock, so once this returns the listener is not in the middle of a delivery and
+    // will not be offered anything else.
+    @Override
+    public boolean unsubscribe(String userId, Consumer<ChatMessage> listener) {
+        Mailbox mailbox = mailboxes.get(userId);
+        if (mailbox == null) {
+            return false;
+        }
+        synchronized (mailbox) {
+            return mailbox.listeners.remove(listener);
+        }
     }
 
     @Override
-    public synchronized List<ChatMessage> getMessagesBetween(String user1, String user2) throws RpmsException {
+    public List<ChatMessage> getMessagesBetween(String user1, String user2) throws RpmsException {
         if (user1 == null || user2 == null || user1.trim().isEmpty() || user2.trim().isEmpty()) {
             throw new RpmsException("INVALID_INPUT", "User IDs cannot be null or empty");
         }
-        String key = getConversationKey(user1, user2);
-        return new ArrayList<>(messageHistory.getOrDefault(key, new ArrayList<>()));
+        ConversationLog log = messageHistory.get(getConversationKey(user1, user2));
+        return log == null ? new ArrayList<>() : log.snapshot();
+    }
+
+    // Paged history: each call copies at most limit messages, whatever the length of the conversation.
+    @Override
+    public List<ChatMessage> getMessagesBefore(String user1, String user2, long beforeId, int limit) throws RpmsException {
+        ConversationLog log = conversationFor(user1, user2, limit);
+        return log == null ? new ArrayList<>() : log.before(beforeId, limit);
+    }
+
+    @Override
+    public List<ChatMessage> getMessagesAfter(String user1, String user2, long afterId, int limit) throws RpmsException {
+        ConversationLog log = conversationFor(user1, user2, limit);
+        return log == null ? new ArrayList<>() : log.after(afterId, limit);
+    }
+
+    @Override
+    public List<ChatMessage> getMessagesSince(String user1, String user2, LocalDateTime since, int limit) throws RpmsException {
+        if (since == null) {
+            throw new RpmsException("INVALID_INPUT", "Start time cannot be null");
+        }
+        ConversationLog log = conversationFor(user1, user2, limit);
+        return log == null ? new ArrayList<>() : log.since(since, limit);
+    }
+
+    public int getConversationSize(String user1, String user2) {
+        ConversationLog log = messageHistory.get(getConversationKey(user1, user2));
+        return log == null ? 0 : log.size();
     }
 
+    // Drains the receiver's own inbox, so the cost is the number of unread messages rather than the
+    // number of messages stored on the server.
     @Override
-    public synchronized List<ChatMessage> getUnreadMessages(String userId) throws RpmsException {
+    public List<ChatMessage> getUnreadMessages(String userId) throws RpmsException {
         if (userId == null || userId.trim().isEmpty()) {
             throw new RpmsException("INVALID_INPUT", "User ID cannot be null or empty");
         }
+        Mailbox mailbox = mailboxes.get(userId);
+        return mailbox == null ? new ArrayList<>() : drain(mailbox);
+    }
+
+    public int getUnreadCount(String userId) {
+        Mailbox mailbox = mailboxes.get(userId);
+        return mailbox == null ? 0 : mailbox.unreadCount.get();
+    }
+
+    private ConversationLog conversationFor(String user1, String user2, int limit) throws RpmsException {
+        if (user1 == null || user2 == null || user1.trim().isEmpty() || user2.trim().isEmpty()) {
+            throw new RpmsException("INVALID_INPUT", "User IDs cannot be null or empty");
+        }
+        if (limit <= 0) {
+            throw new RpmsException("INVALID_INPUT", "Page size must be positive");
+        }
+        return messageHistory.get(getConversationKey(user1, user2));
+    }
+
+    private Mailbox mailboxFor(String userId) {
+        return mailboxes.computeIfAbsent(userId, k -> new Mailbox());
+    }
+
+    private List<ChatMessage> drain(Mailbox mailbox) {
         List<ChatMessage> unread = new ArrayList<>();
-        for (List<ChatMessage> conversation : messageHistory.values()) {
-            for (ChatMessage msg : conversation) {
-                if (msg.getReceiverId().equals(userId) && !msg.isRead()) {
+        synchronized (mailbox) {
+            ChatMessage msg;
+            while ((msg = mailbox.unread.poll()) != null) {
+                mailbox.unreadCount.decrementAndGet();
+                if (msg.markAsRead()) {
                     unread.add(msg);
-                    msg.markAsRead();
                 }
             }
         }
         return unread;
     }
 
+    // Delivery is serialised per mailbox, so the receiver sees messages in the order they were queued
+    // whichever thread happens to push them. A message leaves the queue only once a listener has taken it.
+    private void flush(Mailbox mailbox) {
+        synchronized (mailbox) {
+            ChatMessage msg;
+            while (!mailbox.listeners.isEmpty() && (msg = mailbox.unread.peek()) != null) {
+                if (!deliver(mailbox.listeners, msg)) {
+                    return;
+                }
+                mailbox.unread.poll();
+                mailbox.unreadCount.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean deliver(List<Consumer<ChatMessage>> listeners, ChatMessage message) {
+        boolean accepted = false;
+        for (Consumer<ChatMessage> listener : listeners) {
+            try {
+                listener.accept(message);
+                accepted = true;
+            } catch (RuntimeException e) {
+                LOGGER.warning("Chat listener for " + message.getReceiverId() + " failed: " + e.getMessage());
+            }
+        }
+        if (accepted) {
+            message.markAsRead();
+        }
+        return accepted;
+    }
+
     private String getConversationKey(String user1, String user2) {
         return user1.compareTo(user2) < 0 ? user1 + "-" + user2 : user2 + "-" + user1;
     }
 }
 
-class ChatClient implements Runnable {
+class ChatClient implements AutoCloseable {
+    private static final ExecutorService LISTENERS = Executors.newFixedThreadPool(2, task -> {
+        Thread thread = new Thread(task, "chat-listener");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private String userId;
     private ChatService service;
-    private boolean active;
-    private Thread messageListener;
+    private volatile boolean active;
+    private final Queue<ChatMessage> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Consumer<ChatMessage> subscription = this::onMessage;
+
+    public static final int HISTORY_PAGE_SIZE = 20;
 
+    // Clients own no thread: pushed messages are queued here and printed by a task on the shared
+    // listener pool, scheduled only while the client has something to show.
     public ChatClient(String userId, ChatService service) throws RpmsException {
         if (userId == null || service == null || userId.trim().isEmpty()) {
             throw new RpmsException("INVALID_INPUT", "User ID or chat service cannot be null");
         }
         this.userId = userId;
         this.service = service;
-        this.active = true;
-        this.messageListener = new Thread(this);
-        this.messageListener.start();
+        start();
+    }
+
+    public synchronized void start() throws RpmsException {
+        if (active) {
+            return;
+        }
+        active = true;
+        service.subscribe(userId, subscription);
+        scheduleDrain();
+    }
+
+    public synchronized void stop() {
+        if (!active) {
+            return;
+        }
+        active = false;
+        service.unsubscribe(userId, subscription);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void close() {
+        stop();
     }
 
     public void sendMessage(String receiverId, String message) throws RpmsException {
@@ -1041,42 +4736,57 @@ class ChatClient implements Runnable {
     }
 
     public void viewChatHistory(String otherUserId) throws RpmsException {
-        List<ChatMessage> history = service.getMessagesBetween(userId, otherUserId);
+        viewChatHistory(otherUserId, Long.MAX_VALUE);
+    }
+
+    // Shows one page of history ending just before beforeId; pass the returned ID to page further back.
+    public long viewChatHistory(String otherUserId, long beforeId) throws RpmsException {
+        List<ChatMessage> history = service.getMessagesBefore(userId, otherUserId, beforeId, HISTORY_PAGE_SIZE);
         if (history.isEmpty()) {
             System.out.println("No messages found.");
-            return;
+            return -1;
         }
         System.out.println("\nCHAT HISTORY WITH " + otherUserId + ":");
         for (ChatMessage msg : history) {
             String prefix = msg.getSenderId().equals(userId) ? "You: " : "Them: ";
             System.out.println(prefix + msg.getContent() + " (" + msg.getTimestamp() + ")");
         }
+        long oldest = history.get(0).getMessageId();
+        if (oldest > 0) {
+            System.out.println("(" + oldest + " earlier messages)");
+        }
+        return oldest;
     }
 
-    public void stop() {
-        this.active = false;
+    private void onMessage(ChatMessage message) {
+        inbox.add(message);
+        scheduleDrain();
     }
 
-    @Override
-    public void run() {
-        while (active) {
-            try {
-                List<ChatMessage> newMessages = getUnreadMessages();
-                if (!newMessages.isEmpty()) {
-                    System.out.println("\n=== NEW MESSAGES ===");
-                    for (ChatMessage msg : newMessages) {
-                        System.out.println("From " + msg.getSenderId() + ": " +
-                                msg.getContent() + " (" + msg.getTimestamp() + ")");
-                    }
-                    System.out.println("===================");
-                }
-                Thread.sleep(3000);
-            } catch (InterruptedException e) {
-                System.out.println("Message listener interrupted");
-            } catch (RpmsException e) {
-                System.out.println("Error in chat client: " + e.getMessage());
+    private void scheduleDrain() {
+        if (active && !inbox.isEmpty() && draining.compareAndSet(false, true)) {
+            LISTENERS.execute(this::drain);
+        }
+    }
+
+    // Prints everything that has arrived in one batch. Messages that arrive after a stop stay queued
+    // until the client is started again.
+    private void drain() {
+        List<ChatMessage> newMessages = new ArrayList<>();
+        ChatMessage msg;
+        while (active && (msg = inbox.poll()) != null) {
+            newMessages.add(msg);
+        }
+        if (!newMessages.isEmpty()) {
+            System.out.println("\n=== NEW MESSAGES ===");
+            for (ChatMessage m : newMessages) {
+                System.out.println("From " + m.getSenderId() + ": " +
+                        m.getContent() + " (" + m.getTimestamp() + ")");
             }
+            System.out.println("===================");
         }
+        draining.set(false);
+        scheduleDrain();
     }
 }
 
@@ -1119,13 +4829,17 @@ class VideoCall implements VideoCallService {
 // Main Application Class
 public class Rpms {
     private static final Logger LOGGER = Logger.getLogger(Rpms.class.getName());
-    private List<Patient> patients = new ArrayList<>();
-    private List<Doctor> doctors = new ArrayList<>();
-    private List<Administrator> admins = new ArrayList<>();
-    private VitalsDatabase vitalsDB = new VitalsDatabase();
+    private static final int SMTP_POOL_SIZE = 4;
+    private final UserRegistry users = new UserRegistry();
+    private VitalsDatabase vitalsDB;
+    private VitalsPipeline vitalsPipeline;
     private AppointmentManager appointmentManager = new AppointmentManager();
     private ChatServer chatServer = new ChatServer();
     private NotificationService notificationService;
+    private EmailNotification emailNotifier;
+    private OutboundNotificationQueue emailQueue;
+    private OutboundNotificationQueue smsQueue;
+    private ReminderService reminderService;
     private Scanner sc = new Scanner(System.in);
     private User currentUser;
     private String smtpUsername;
@@ -1133,17 +4847,55 @@ public class Rpms {
 
     public Rpms() {
         try {
-            Notifiable emailNotifier = new EmailNotification(
+            this.emailNotifier = new EmailNotification(
                 System.getenv("EMAIL_USERNAME") != null ? System.getenv("EMAIL_USERNAME") : "default@example.com",
                 System.getenv("EMAIL_PASSWORD") != null ? System.getenv("EMAIL_PASSWORD") : "password",
                 "smtp.gmail.com",
-                "587"
+                "587",
+                SMTP_POOL_SIZE
             );
-            Notifiable smsNotifier = new SMSNotification();
-            this.notificationService = new NotificationService(emailNotifier, smsNotifier);
+            openOutboundQueues();
         } catch (RpmsException e) {
             LOGGER.severe("Failed to initialize notification service: " + e.getMessage());
         }
+        // Patients are still kept in memory only, so archived vitals would outlive the accounts they belong to
+        // and attach to whoever registers the same ID next. The archive stays opt-in until users are persisted.
+        String archiveFile = System.getenv("RPMS_VITALS_ARCHIVE");
+        if (archiveFile != null) {
+            try {
+                this.vitalsDB = new VitalsDatabase(Paths.get(archiveFile), users::findPatient);
+            } catch (RpmsException e) {
+                LOGGER.severe("Failed to open vitals archive, keeping vitals in memory: " + e.getMessage());
+            }
+        }
+        if (vitalsDB == null) {
+            this.vitalsDB = new VitalsDatabase();
+        }
+        try {
+            vitalsDB.setRetentionPolicy(new VitalsRetentionPolicy(30, 365, 520));
+        } catch (RpmsException e) {
+            LOGGER.severe("Failed to configure vitals retention: " + e.getMessage());
+        }
+        if (System.getenv("RPMS_THRESHOLD_RULES") != null) {
+            try {
+                vitalsDB.setThresholdRules(ThresholdRules.load(Paths.get(System.getenv("RPMS_THRESHOLD_RULES"))));
+            } catch (RpmsException e) {
+                LOGGER.severe("Failed to load threshold rules, using adult defaults: " + e.getMessage());
+            }
+        }
+        try {
+            this.vitalsPipeline = new VitalsPipeline(vitalsDB, () -> notificationService,
+                    () -> users.getDoctors().stream().map(Doctor::getContactInfo).collect(Collectors.toList()),
+                    256, new AlertSuppressor(TimeUnit.MINUTES.toMillis(10)));
+        } catch (RpmsException e) {
+            LOGGER.severe("Failed to start vitals pipeline: " + e.getMessage());
+        }
+        try {
+            this.reminderService = new ReminderService(notificationService);
+            reminderService.start();
+        } catch (RpmsException e) {
+            LOGGER.severe("Failed to start reminder service: " + e.getMessage());
+        }
     }
 
     public void run() {
@@ -1165,6 +4917,92 @@ public class Rpms {
         }
     }
 
+    private void shutdown() {
+        try {
+            if (vitalsPipeline != null) {
+                vitalsPipeline.close();
+            }
+            vitalsDB.close();
+        } catch (RpmsException e) {
+            LOGGER.severe("Failed to close vitals database: " + e.getMessage());
+        }
+        if (reminderService != null) {
+            reminderService.close();
+        }
+        for (Patient p : users.getPatients()) {
+            if (p.getChatClient() != null) {
+                p.getChatClient().close();
+            }
+        }
+        closeNotifiers();
+    }
+
+    private void openOutboundQueues() throws RpmsException {
+        this.emailQueue = new OutboundNotificationQueue(emailNotifier, Paths.get("rpms-outbox-email.log"), 2);
+        this.smsQueue = new OutboundNotificationQueue(new SMSNotification(), Paths.get("rpms-outbox-sms.log"), 1);
+        this.notificationService = new NotificationService(emailQueue, smsQueue);
+        if (reminderService != null) {
+            reminderService.setNotificationService(notificationService);
+        }
+    }
+
+    private void closeNotifiers() {
+        if (emailQueue != null) {
+            emailQueue.close();
+        }
+        if (smsQueue != null) {
+            smsQueue.close();
+        }
+        if (emailNotifier != null) {
+            emailNotifier.close();
+        }
+    }
+
+    // ward and condition select ward- and condition-scoped threshold rules; blank leaves them unset
+    private void readCohort(Patient patient) {
+        System.out.print("Ward (optional): ");
+        patient.setWard(sc.nextLine());
+        System.out.print("Condition (optional): ");
+        patient.setCondition(sc.nextLine());
+    }
+
+    private void importVitals(Path csv) throws RpmsException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RpmsException("IMPORT_ERROR", "Failed to read " + csv, e);
+        }
+        List<VitalSign> batch = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            Patient patient = fields.length == 6 ? users.findPatient(fields[0].trim()) : null;
+            if (patient == null) {
+                throw new RpmsException("INVALID_INPUT", "Line " + (i + 1) + ": expected a known patient ID and five values");
+            }
+            try {
+                batch.add(new VitalSign(patient, Double.parseDouble(fields[2].trim()), Double.parseDouble(fields[3].trim()),
+                        Double.parseDouble(fields[4].trim()), Double.parseDouble(fields[5].trim()), LocalDate.parse(fields[1].trim())));
+            } catch (RuntimeException e) {
+                throw new RpmsException("INVALID_INPUT", "Line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        Map<String, List<VitalSign>> abnormal = vitalsDB.addAll(batch);
+        System.out.println("Imported " + batch.size() + " reading(s).");
+        if (!abnormal.isEmpty()) {
+            List<String> doctors = users.getDoctors().stream().map(Doctor::getContactInfo).collect(Collectors.toList());
+            if (doctors.isEmpty() || notificationService == null) {
+                System.out.println(abnormal.size() + " patient(s) had abnormal readings, but no doctor could be alerted.");
+            } else {
+                new BatchVitalAlert(abnormal, new AlertService(notificationService, doctors)).checkVitals();
+            }
+        }
+    }
+
     private void register() {
         System.out.println("\n--- Register ---");
         System.out.println("1. Patient\n2. Doctor\n3. Administrator");
@@ -1183,20 +5021,21 @@ public class Rpms {
                 System.out.print("Enter Birth Date (YYYY-MM-DD): ");
                 LocalDate birthDate = LocalDate.parse(sc.nextLine());
                 Patient patient = new Patient(id, name, contact, gender, birthDate);
+                readCohort(patient);
+                users.register(patient);
                 patient.setChatClient(new ChatClient(id, chatServer));
-                patients.add(patient);
                 System.out.println("Patient registered.");
             } else if (role == 2) {
                 System.out.print("Enter Joining Date (YYYY-MM-DD): ");
                 LocalDate joiningDate = LocalDate.parse(sc.nextLine());
                 Doctor doctor = new Doctor(id, name, contact, gender, joiningDate);
-                doctors.add(doctor);
+                users.register(doctor);
                 System.out.println("Doctor registered.");
             } else if (role == 3) {
                 System.out.print("Enter Joining Date (YYYY-MM-DD): ");
                 LocalDate joiningDate = LocalDate.parse(sc.nextLine());
                 Administrator admin = new Administrator(id, name, contact, gender, joiningDate);
-                admins.add(admin);
+                users.register(admin);
                 System.out.println("Administrator registered.");
             } else {
                 System.out.println("Invalid role.");
@@ -1209,31 +5048,19 @@ public class Rpms {
     }
 
     private boolean login() {
-        System.out.print("Enter User ID: ");
+        System.out.print("Enter User ID or Email: ");
         String id = sc.nextLine();
-        for (Patient p : patients) {
-            if (p.getUserID().equals(id)) {
-                currentUser = p;
-                configureSmtpCredentials();
-                return true;
-            }
-        }
-        for (Doctor d : doctors) {
-            if (d.getUserID().equals(id)) {
-                currentUser = d;
-                configureSmtpCredentials();
-                return true;
-            }
+        User user = users.find(id);
+        if (user == null) {
+            user = users.findByEmail(id);
         }
-        for (Administrator a : admins) {
-            if (a.getUserID().equals(id)) {
-                currentUser = a;
-                configureSmtpCredentials();
-                return true;
-            }
+        if (user == null) {
+            System.out.println("User not found.");
+            return false;
         }
-        System.out.println("User not found.");
-        return false;
+        currentUser = user;
+        configureSmtpCredentials();
+        return true;
     }
 
     private void configureSmtpCredentials() {
@@ -1244,8 +5071,18 @@ public class Rpms {
             System.out.print("Enter SMTP Password (e.g., App Password): ");
             smtpPassword = sc.nextLine();
             try {
-                Notifiable emailNotifier = new EmailNotification(smtpUsername, smtpPassword, "smtp.gmail.com", "587");
-                this.notificationService = new NotificationService(emailNotifier, new SMSNotification());
+                EmailNotification replacement = new EmailNotification(smtpUsername, smtpPassword, "smtp.gmail.com", "587", SMTP_POOL_SIZE);
+                if (emailQueue != null) {
+                    // hand the live queue to the new account instead of reopening (and replaying) its journal
+                    emailQueue.replaceDelegate(replacement);
+                    if (emailNotifier != null) {
+                        emailNotifier.close();
+                    }
+                    this.emailNotifier = replacement;
+                } else {
+                    this.emailNotifier = replacement;
+                    openOutboundQueues();
+                }
             } catch (RpmsException e) {
                 System.out.println("Error initializing notification service: " + e.getMessage());
             }
@@ -1268,7 +5105,7 @@ public class Rpms {
     private void patientMenu() {
         while (true) {
             System.out.println("\n--- Patient Menu ---");
-            System.out.println("1. Upload Vitals\n2. View Feedback\n3. Schedule Appointment\n4. Start Chat\n5. Trigger Panic Button\n6. Logout");
+            System.out.println("1. Upload Vitals\n2. View Feedback\n3. Schedule Appointment\n4. Start Chat\n5. Trigger Panic Button\n6. Logout\n7. View Chat History");
             System.out.print("Enter your choice: ");
             try {
                 int choice = Integer.parseInt(sc.nextLine());
@@ -1284,12 +5121,8 @@ public class Rpms {
                         System.out.print("Oxygen Level: ");
                         double o2 = Double.parseDouble(sc.nextLine());
                         VitalSign vital = new VitalSign(p, hr, bp, temp, o2, LocalDate.now());
-                        p.uploadVitals(vital, vitalsDB);
-                        List<String> recipients = doctors.stream()
-                                .map(Doctor::getContactInfo)
-                                .collect(Collectors.toList());
-                        VitalAlert alert = new VitalAlert(p, vital, new AlertService(notificationService, recipients));
-                        alert.checkVitals();
+                        p.uploadVitals(vital, vitalsPipeline);
+                        System.out.println("Vitals submitted.");
                         break;
                     case 2:
                         p.viewFeedback();
@@ -1301,9 +5134,18 @@ public class Rpms {
                         LocalDateTime time = LocalDateTime.parse(sc.nextLine());
                         System.out.print("Doctor ID: ");
                         String docId = sc.nextLine();
-                        Doctor doc = doctors.stream().filter(d -> d.getUserID().equals(docId)).findFirst().orElse(null);
+                        Doctor doc = users.findDoctor(docId);
                         if (doc != null) {
-                            p.scheduleAppointment(apptId, time, doc, appointmentManager);
+                            try {
+                                System.out.println("Appointment requested: " + p.scheduleAppointment(apptId, time, doc, appointmentManager));
+                            } catch (RpmsException e) {
+                                if (!"SLOT_TAKEN".equals(e.getErrorCode()) && !"SLOT_UNAVAILABLE".equals(e.getErrorCode())) {
+                                    throw e;
+                                }
+                                System.out.println("Error: " + e.getMessage());
+                                LocalDateTime suggestion = appointmentManager.findNextFreeSlot(doc, time, Appointment.DEFAULT_DURATION);
+                                System.out.println(suggestion != null ? "Next free slot: " + suggestion : "No free slots available.");
+                            }
                         } else {
                             System.out.println("Doctor not found.");
                         }
@@ -1316,16 +5158,33 @@ public class Rpms {
                         p.sendMessage(receiverId, message);
                         break;
                     case 5:
-                        Doctor assignedDoc = doctors.isEmpty() ? null : doctors.get(0);
+                        Doctor assignedDoc = users.getDoctors().stream().findFirst().orElse(null);
                         if (assignedDoc != null) {
-                            PanicButton panic = new PanicButton(p, assignedDoc, new AlertService(notificationService, List.of(assignedDoc.getContactInfo())));
-                            panic.pressPanicButton();
+                            AlertService panicAlerts = new AlertService(notificationService, List.of(assignedDoc.getContactInfo()));
+                            panicAlerts.setFanOutDeadline(10_000);
+                            PanicButton panic = new PanicButton(p, assignedDoc, panicAlerts);
+                            AlertDispatch panicDelivery = panic.pressPanicButton();
+                            if (!panicDelivery.allDelivered()) {
+                                System.out.println("Your doctor has been alerted in the app; e-mail delivery is delayed: " + panicDelivery.getOutcomes());
+                            }
                         } else {
                             System.out.println("No doctors available to assign.");
                         }
                         break;
                     case 6:
                         return;
+                    case 7:
+                        System.out.print("Chat with (user ID): ");
+                        String otherId = sc.nextLine();
+                        long cursor = p.getChatClient().viewChatHistory(otherId, Long.MAX_VALUE);
+                        while (cursor > 0) {
+                            System.out.print("Load older messages? (y/n): ");
+                            if (!"y".equalsIgnoreCase(sc.nextLine().trim())) {
+                                break;
+                            }
+                            cursor = p.getChatClient().viewChatHistory(otherId, cursor);
+                        }
+                        break;
                     default:
                         System.out.println("Invalid choice.");
                 }
@@ -1340,7 +5199,7 @@ public class Rpms {
     private void doctorMenu() {
         while (true) {
             System.out.println("\n--- Doctor Menu ---");
-            System.out.println("1. View Patient Vitals\n2. Provide Feedback\n3. Manage Appointment\n4. Start Video Call\n5. Send Reminders\n6. Issue Prescription\n7. Logout");
+            System.out.println("1. View Patient Vitals\n2. Provide Feedback\n3. Manage Appointment\n4. Start Video Call\n5. Send Reminders\n6. Issue Prescription\n7. Logout\n8. Add Available Time");
             System.out.print("Enter your choice: ");
             try {
                 int choice = Integer.parseInt(sc.nextLine());
@@ -1354,7 +5213,7 @@ public class Rpms {
                     case 2:
                         System.out.print("Patient ID: ");
                         patientId = sc.nextLine();
-                        Patient p = patients.stream().filter(pt -> pt.getUserID().equals(patientId)).findFirst().orElse(null);
+                        Patient p = users.findPatient(patientId);
                         if (p != null) {
                             System.out.print("Feedback: ");
                             String feedback = sc.nextLine();
@@ -1366,13 +5225,19 @@ public class Rpms {
                     case 3:
                         System.out.print("Patient ID: ");
                         patientId = sc.nextLine();
-                        p = patients.stream().filter(pt -> pt.getUserID().equals(patientId)).findFirst().orElse(null);
+                        p = users.findPatient(patientId);
                         if (p != null) {
                             System.out.print("Date and Time (YYYY-MM-DDTHH:MM): ");
                             LocalDateTime time = LocalDateTime.parse(sc.nextLine());
                             System.out.print("Action (approve/cancel): ");
                             String action = sc.nextLine();
-                            d.manageAppointment(time, p, appointmentManager, action, notificationService);
+                            Appointment managed = d.manageAppointment(time, p, appointmentManager, action, notificationService);
+                            System.out.println("Appointment " + managed.getAppointmentStatus().getLabel().toLowerCase(Locale.ROOT) + ": " + managed);
+                            if (reminderService != null && managed.getAppointmentStatus() == AppointmentStatus.APPROVED) {
+                                reminderService.addAppointment(managed);
+                            } else if (reminderService != null && managed.getAppointmentStatus() == AppointmentStatus.CANCELLED) {
+                                reminderService.cancelAppointmentReminder(managed.getAppointmentID());
+                            }
                         } else {
                             System.out.println("Patient not found.");
                         }
@@ -1380,7 +5245,7 @@ public class Rpms {
                     case 4:
                         System.out.print("Patient ID: ");
                         patientId = sc.nextLine();
-                        p = patients.stream().filter(pt -> pt.getUserID().equals(patientId)).findFirst().orElse(null);
+                        p = users.findPatient(patientId);
                         if (p != null) {
                             VideoCall call = new VideoCall(d, p);
                             System.out.println(call.startCall());
@@ -1389,20 +5254,18 @@ public class Rpms {
                         }
                         break;
                     case 5:
-                        ReminderService reminders = new ReminderService(notificationService);
-                        appointmentManager.getAppointments().forEach(appointment -> {
-                         try {
-                        reminders.addAppointment(appointment);
-                        } catch (RpmsException e) {
-                        System.out.println("Error adding appointment to reminders: " + e.getMessage());
-                      }
-                    });
-    reminders.sendAppointmentReminder();
-    break;
+                        if (reminderService != null) {
+                            LocalDateTime now = LocalDateTime.now();
+                            reminderService.sendAppointmentReminder(
+                                    appointmentManager.getAppointments(AppointmentStatus.APPROVED, now, now.plusHours(24)));
+                        } else {
+                            System.out.println("Reminder service is unavailable.");
+                        }
+                        break;
                     case 6:
                         System.out.print("Patient ID: ");
                         patientId = sc.nextLine();
-                        p = patients.stream().filter(pt -> pt.getUserID().equals(patientId)).findFirst().orElse(null);
+                        p = users.findPatient(patientId);
                         if (p != null) {
                             System.out.print("Prescription ID: ");
                             String prescriptionId = sc.nextLine();
@@ -1410,10 +5273,13 @@ public class Rpms {
                             String medication = sc.nextLine();
                             System.out.print("Dosage: ");
                             String dosage = sc.nextLine();
-                            System.out.print("Schedule: ");
+                            System.out.print("Schedule (e.g. every 8h, twice daily at 09:00/21:00, as needed): ");
                             String schedule = sc.nextLine();
                             Prescription prescription = new Prescription(prescriptionId, p, medication, dosage, schedule);
                             p.getMedicalHistory().addPrescription(prescription);
+                            if (reminderService != null) {
+                                reminderService.addPrescription(prescription);
+                            }
                             System.out.println("Prescription issued: " + prescription);
                         } else {
                             System.out.println("Patient not found.");
@@ -1421,6 +5287,12 @@ public class Rpms {
                         break;
                     case 7:
                         return;
+                    case 8:
+                        System.out.print("Available from (YYYY-MM-DDTHH:MM): ");
+                        LocalDateTime slot = LocalDateTime.parse(sc.nextLine());
+                        d.setAvailableTime(slot);
+                        System.out.println("Available " + slot + " to " + slot.plus(Appointment.DEFAULT_DURATION));
+                        break;
                     default:
                         System.out.println("Invalid choice.");
                 }
@@ -1435,7 +5307,7 @@ public class Rpms {
     private void adminMenu() {
         while (true) {
             System.out.println("\n--- Administrator Menu ---");
-            System.out.println("1. Add Patient\n2. Add Doctor\n3. Remove Patient\n4. Remove Doctor\n5. View Logs\n6. Logout");
+            System.out.println("1. Add Patient\n2. Add Doctor\n3. Remove Patient\n4. Remove Doctor\n5. View Logs\n6. Logout\n7. Import Vitals (CSV)");
             System.out.print("Enter your choice: ");
             try {
                 int choice = Integer.parseInt(sc.nextLine());
@@ -1453,9 +5325,10 @@ public class Rpms {
                         System.out.print("Birth Date (YYYY-MM-DD): ");
                         LocalDate birthDate = LocalDate.parse(sc.nextLine());
                         Patient p = new Patient(id, name, contact, gender, birthDate);
+                        readCohort(p);
+                        users.register(p);
                         p.setChatClient(new ChatClient(id, chatServer));
                         a.addPatient(p);
-                        patients.add(p);
                         break;
                     case 2:
                         System.out.print("Doctor ID: ");
@@ -1469,16 +5342,20 @@ public class Rpms {
                         System.out.print("Joining Date (YYYY-MM-DD): ");
                         LocalDate joiningDate = LocalDate.parse(sc.nextLine());
                         Doctor d = new Doctor(id, name, contact, gender, joiningDate);
+                        users.register(d);
                         a.addDoctor(d);
-                        doctors.add(d);
                         break;
                     case 3:
                         System.out.print("Patient ID: ");
                         id = sc.nextLine();
-                        p = patients.stream().filter(pt -> pt.getUserID().equals(id)).findFirst().orElse(null);
+                        p = users.findPatient(id);
                         if (p != null) {
                             a.removePatient(p);
-                            patients.remove(p);
+                            users.remove(p);
+                            vitalsDB.getThresholdRules().invalidate(p.getUserID());
+                            if (p.getChatClient() != null) {
+                                p.getChatClient().close();
+                            }
                         } else {
                             System.out.println("Patient not found.");
                         }
@@ -1486,10 +5363,10 @@ public class Rpms {
                     case 4:
                         System.out.print("Doctor ID: ");
                         id = sc.nextLine();
-                        d = doctors.stream().filter(doc -> doc.getUserID().equals(id)).findFirst().orElse(null);
+                        d = users.findDoctor(id);
                         if (d != null) {
                             a.removeDoctor(d);
-                            doctors.remove(d);
+                            users.remove(d);
                         } else {
                             System.out.println("Doctor not found.");
                         }
@@ -1499,6 +5376,10 @@ public class Rpms {
                         break;
                     case 6:
                         return;
+                    case 7:
+                        System.out.print("CSV file (patientID,YYYY-MM-DD,heartRate,bloodPressure,temperature,oxygen): ");
+                        importVitals(Paths.get(sc.nextLine()));
+                        break;
                     default:
                         System.out.println("Invalid choice.");
                 }
@@ -1511,6 +5392,11 @@ public class Rpms {
     }
 
     public static void main(String[] args) {
-        new Rpms().run();
+        Rpms rpms = new Rpms();
+        try {
+            rpms.run();
+        } finally {
+            rpms.shutdown();
+        }
     }
 }
\ No newline at end of file
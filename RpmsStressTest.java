@@ -0,0 +1,1285 @@
+package rpms;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Provider;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.URLName;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Checks for the concurrent and indexed paths in Rpms.java; they need nothing beyond its own dependencies.
+// Run with: java -cp <classes>:<jakarta mail and activation jars> rpms.RpmsStressTest
+class RpmsStressTest {
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        vitalsKeepDateOrderAndFirstLatest();
+        outOfOrderVitalsInsertCheaply();
+        storageModesAgreeOnShuffledUploads();
+        latestLookupStaysFlatAsStorageGrows();
+        archiveSurvivesReopenAndRejectsForeignFiles();
+        invalidBatchStoresNothing();
+        batchIngestKeepsUpWithSingleInserts();
+        concurrentWritersLoseNoReadings();
+        slowNotifierCoalescesInsteadOfDroppingAlerts();
+        slowNotifierNeverStallsStorage();
+        rollingStatsFollowTodayAndSurviveRestart();
+        retentionRollsUpInEveryMode();
+        thresholdRulesFollowWardAndRejectInvertedBounds();
+        cachedRulePlansCostAboutAsMuchAsFixedLimits();
+        alertFanOutReportsRealOutcomesAndStaysBounded();
+        alertReachesEveryRecipientInOneSendLatency();
+        smtpPoolBoundsConnectionsAndRetriesOnce();
+        outboundQueueKeepsAlertsOutOfDigestsAndSwapsWithoutDuplicates();
+        userRegistryListsRolesInRegistrationOrder();
+        appointmentRemindersFollowApproval();
+        prescriptionSchedulesKeepFreeTextAndAnchorOnIssueDay();
+        concurrentBookingsNeverOverlap();
+        racingApproveAndCancelKeepStatusIndexConsistent();
+        chatDeliveryKeepsOrderAcrossResubscribes();
+        unreadLookupIgnoresStoredHistory();
+        chatSendThroughputHoldsUpAcrossThreads();
+        chatHistoryKeepsSendTimesAndPagesBack();
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    static void vitalsKeepDateOrderAndFirstLatest() throws Exception {
+        Path archiveFile = Files.createTempFile("rpms-test", ".dat");
+        Files.delete(archiveFile);
+        Patient patient = new Patient("P1", "Test Patient", "p1@example.com", "F", LocalDate.of(1980, 1, 1));
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        try (VitalsDatabase archived = new VitalsDatabase(archiveFile, id -> patient)) {
+            for (VitalsDatabase db : List.of(new VitalsDatabase(VitalsStorageMode.OBJECT),
+                                             new VitalsDatabase(VitalsStorageMode.COLUMNAR), archived)) {
+                String mode = db.getStorageMode().toString();
+                db.addVitalSign(new VitalSign(patient, 70, 120, 36.6, 98, day.plusDays(2)));
+                db.addVitalSign(new VitalSign(patient, 71, 120, 36.6, 98, day));
+                db.addVitalSign(new VitalSign(patient, 72, 120, 36.6, 98, day.plusDays(2)));
+                db.addVitalSign(new VitalSign(patient, 73, 120, 36.6, 98, day.plusDays(1)));
+                List<Double> order = new ArrayList<>();
+                for (VitalSign vital : db.getVitalSignHistory("P1")) {
+                    order.add(vital.getHeartRate());
+                }
+                check(order.equals(List.of(71.0, 73.0, 70.0, 72.0)), mode + " history is date ordered, ties in insertion order: " + order);
+                check(db.getLatestVitalSign("P1").getHeartRate() == 70, mode + " latest is the first reading on the newest date");
+            }
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    static void outOfOrderVitalsInsertCheaply() throws Exception {
+        for (VitalsStorageMode mode : new VitalsStorageMode[] {VitalsStorageMode.OBJECT, VitalsStorageMode.COLUMNAR}) {
+            reverseOrderInserts(mode, new VitalsDatabase(mode));
+        }
+        Path archiveFile = Files.createTempFile("rpms-reverse", ".dat");
+        Files.delete(archiveFile);
+        try (VitalsDatabase archived = new VitalsDatabase(archiveFile, id -> null)) {
+            reverseOrderInserts(VitalsStorageMode.ARCHIVE, archived);
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    private static void reverseOrderInserts(VitalsStorageMode mode, VitalsDatabase db) throws Exception {
+        Patient patient = new Patient("P2", "Late Uploader", "p2@example.com", "M", LocalDate.of(1975, 6, 1));
+        LocalDate today = LocalDate.of(2024, 12, 31);
+        int readings = 200_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < readings; i++) {
+            // newest first, the worst case for a single sorted list
+            db.addVitalSign(new VitalSign(patient, 60 + i % 40, 120, 36.6, 98, today.minusDays(i / 50)));
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        List<VitalSign> history = db.getVitalSignHistory("P2");
+        boolean sorted = true;
+        for (int i = 1; i < history.size(); i++) {
+            sorted &= !history.get(i).getCheckupDate().isBefore(history.get(i - 1).getCheckupDate());
+        }
+        check(history.size() == readings && sorted, mode + " reverse-order inserts come back complete and date ordered");
+        check(history.get(0).getHeartRate() == 60 + (readings - 50) % 40, mode + " readings sharing a day keep their insertion order");
+        check(db.getLatestVitalSign("P2").getHeartRate() == 60, mode + " latest is the first reading of the newest day");
+        // a whole-series shift per insert took over 30 seconds here
+        check(elapsedMs < 10_000, mode + " reverse-order inserts only shift their own block: " + elapsedMs + " ms");
+        System.out.printf("%s: %d reverse-order inserts took %d ms%n", mode, readings, elapsedMs);
+    }
+
+    // Object mode is the reference; the other modes must return exactly the same readings in the same order.
+    static void storageModesAgreeOnShuffledUploads() throws Exception {
+        Path archiveFile = Files.createTempFile("rpms-shuffled", ".dat");
+        Files.delete(archiveFile);
+        try (VitalsDatabase archived = new VitalsDatabase(archiveFile, id -> null)) {
+            Patient patient = new Patient("P6", "Shuffled Uploader", "p6@example.com", "F", LocalDate.of(1980, 3, 1));
+            Random random = new Random(7);
+            List<VitalSign> uploads = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                uploads.add(new VitalSign(patient, i, 120, 36.6, 98, LocalDate.of(2020, 1, 1).plusDays(random.nextInt(400))));
+            }
+            VitalsDatabase reference = new VitalsDatabase(VitalsStorageMode.OBJECT);
+            Map<String, VitalsDatabase> others = new LinkedHashMap<>();
+            others.put("COLUMNAR", new VitalsDatabase(VitalsStorageMode.COLUMNAR));
+            others.put("ARCHIVE", archived);
+            for (VitalSign vital : uploads) {
+                reference.addVitalSign(vital);
+                for (VitalsDatabase db : others.values()) {
+                    db.addVitalSign(vital);
+                }
+            }
+            for (int i = 0; i < 5_000; i++) {
+                VitalSign gone = uploads.get(random.nextInt(uploads.size()));
+                reference.removeVitalSign(gone);
+                for (VitalsDatabase db : others.values()) {
+                    db.removeVitalSign(gone);
+                }
+            }
+            for (Map.Entry<String, VitalsDatabase> entry : others.entrySet()) {
+                String mode = entry.getKey();
+                VitalsDatabase db = entry.getValue();
+                check(sameReadings(reference.getVitalSignHistory("P6"), db.getVitalSignHistory("P6")),
+                        mode + " history matches object mode after shuffled uploads and removals");
+                check(reference.getLatestVitalSign("P6").getHeartRate() == db.getLatestVitalSign("P6").getHeartRate(),
+                        mode + " latest matches object mode");
+                for (int i = 0; i < 200; i++) {
+                    LocalDate from = LocalDate.of(2020, 1, 1).plusDays(random.nextInt(420) - 10);
+                    LocalDate to = from.plusDays(random.nextInt(60));
+                    check(sameReadings(reference.getVitalSignHistory("P6", from, to), db.getVitalSignHistory("P6", from, to)),
+                            mode + " range " + from + ".." + to + " matches object mode");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    private static boolean sameReadings(List<VitalSign> expected, List<VitalSign> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.get(i).getHeartRate() != actual.get(i).getHeartRate() ||
+                !expected.get(i).getCheckupDate().equals(actual.get(i).getCheckupDate())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Defaults to 1M readings so the suite stays quick; the full curve the request asked for is
+    // -Drpms.bench.readings=50000000 -Drpms.bench.modes=COLUMNAR -Xmx4g (object mode needs more heap than that).
+    static void latestLookupStaysFlatAsStorageGrows() throws Exception {
+        long maxReadings = Long.getLong("rpms.bench.readings", 1_000_000);
+        String[] modes = System.getProperty("rpms.bench.modes", "OBJECT,COLUMNAR").split(",");
+        int patients = 1_000;
+        int perDay = 20;
+        LocalDate[] days = new LocalDate[(int) (maxReadings / patients / perDay) + 1];
+        for (int d = 0; d < days.length; d++) {
+            days[d] = LocalDate.of(2015, 1, 1).plusDays(d);
+        }
+        for (String modeName : modes) {
+            VitalsStorageMode mode = VitalsStorageMode.valueOf(modeName.trim());
+            VitalsDatabase db = new VitalsDatabase(mode);
+            List<Patient> roster = new ArrayList<>();
+            for (int i = 0; i < patients; i++) {
+                roster.add(new Patient("L" + i, "Lookup " + i, "l" + i + "@example.com", "F", LocalDate.of(1970, 1, 1)));
+            }
+            long stored = 0;
+            double baselineNanos = -1;
+            for (long checkpoint = 10_000; checkpoint <= maxReadings; checkpoint = nextCheckpoint(checkpoint, maxReadings)) {
+                for (; stored < checkpoint; stored++) {
+                    long perPatient = stored / patients;
+                    db.addVitalSign(new VitalSign(roster.get((int) (stored % patients)), 60 + stored % 40, 120, 36.6, 98,
+                            days[(int) (perPatient / perDay)]));
+                }
+                double nanos = latestLookupNanos(db, patients);
+                if (baselineNanos < 0) {
+                    baselineNanos = nanos;
+                }
+                System.out.printf("%s latest lookup with %,d readings stored: %.0f ns%n", mode, stored, nanos);
+                check(nanos <= Math.max(4 * baselineNanos, baselineNanos + 1_000),
+                        mode + " latest lookup stays flat at " + stored + " readings: " + nanos + " ns vs " + baselineNanos + " ns");
+            }
+        }
+    }
+
+    private static long nextCheckpoint(long checkpoint, long max) {
+        if (checkpoint == max) {
+            return max + 1;
+        }
+        return Math.min(checkpoint * 10, max);
+    }
+
+    private static double latestLookupNanos(VitalsDatabase db, int patients) throws Exception {
+        Random random = new Random(42);
+        String[] ids = new String[patients];
+        for (int i = 0; i < patients; i++) {
+            ids[i] = "L" + i;
+        }
+        int lookups = 200_000;
+        long sink = 0;
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink += db.getLatestVitalSign(ids[random.nextInt(patients)]).getCheckupDate().getDayOfMonth();
+            }
+            if (round == 1) {
+                check(sink > 0, "lookups returned readings");
+                return (System.nanoTime() - start) / (double) lookups;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    static void archiveSurvivesReopenAndRejectsForeignFiles() throws Exception {
+        Path archiveFile = Files.createTempFile("rpms-test", ".dat");
+        Files.delete(archiveFile);
+        Patient patient = new Patient("P3", "Archived Patient", "p3@example.com", "F", LocalDate.of(1990, 2, 2));
+        int readings = 5_000;
+        try {
+            long start = System.nanoTime();
+            try (VitalsDatabase db = new VitalsDatabase(archiveFile, id -> patient)) {
+                for (int i = 0; i < readings; i++) {
+                    db.addVitalSign(new VitalSign(patient, 60 + i % 40, 120, 36.6, 98, LocalDate.of(2024, 1, 1).plusDays(i % 300)));
+                }
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            try (VitalsDatabase reopened = new VitalsDatabase(archiveFile, id -> patient)) {
+                check(reopened.getVitalSignHistory("P3").size() == readings, "archived readings survive a reopen");
+            }
+            System.out.printf("%d archived appends took %d ms%n", readings, elapsedMs);
+
+            Files.write(archiveFile, new byte[64]);
+            VitalsDatabase foreign = null;
+            try {
+                foreign = new VitalsDatabase(archiveFile, id -> patient);
+                check(false, "a file without the archive header is rejected");
+            } catch (RpmsException e) {
+                check("ARCHIVE_ERROR".equals(e.getErrorCode()), "foreign file fails with ARCHIVE_ERROR");
+            } finally {
+                if (foreign != null) {
+                    foreign.close();
+                }
+            }
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    static void invalidBatchStoresNothing() throws Exception {
+        Patient first = new Patient("P4", "Batch One", "p4@example.com", "F", LocalDate.of(1970, 1, 1));
+        Patient second = new Patient("P5", "Batch Two", "p5@example.com", "M", LocalDate.of(1971, 1, 1));
+        VitalsDatabase db = new VitalsDatabase(VitalsStorageMode.OBJECT);
+        LocalDate day = LocalDate.of(2024, 5, 1);
+        List<VitalSign> batch = List.of(
+                new VitalSign(first, 70, 120, 36.6, 98, day),
+                new VitalSign(second, 150, 120, 36.6, 98, day),
+                new VitalSign(second, Double.NaN, 120, 36.6, 98, day));
+        try {
+            db.addAll(batch);
+            check(false, "a batch with a non-numeric reading is rejected");
+        } catch (RpmsException e) {
+            check("INVALID_VITAL".equals(e.getErrorCode()), "batch validation reports INVALID_VITAL");
+        }
+        check(db.getVitalSignHistory("P4").isEmpty() && db.getVitalSignHistory("P5").isEmpty(), "a rejected batch stores nothing");
+        Map<String, List<VitalSign>> abnormal = db.addAll(batch.subList(0, 2));
+        check(db.getVitalSignHistory("P4").size() == 1 && abnormal.keySet().equals(Set.of("P5")), "a valid batch is stored and grouped");
+    }
+
+    static void batchIngestKeepsUpWithSingleInserts() throws Exception {
+        List<Patient> roster = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            roster.add(new Patient("I" + i, "Ingest " + i, "i" + i + "@example.com", "M", LocalDate.of(1960, 1, 1)));
+        }
+        List<VitalSign> readings = new ArrayList<>();
+        LocalDate start = LocalDate.now().minusDays(200);
+        for (int i = 0; i < 200_000; i++) {
+            readings.add(new VitalSign(roster.get(i % roster.size()), 60 + i % 70, 120, 36.6, 98, start.plusDays(i / roster.size())));
+        }
+        double single = 0;
+        double batched = 0;
+        for (int round = 0; round < 3; round++) {
+            // the first round warms up the JIT and is not counted
+            VitalsDatabase one = new VitalsDatabase(VitalsStorageMode.OBJECT);
+            long t0 = System.nanoTime();
+            int abnormal = 0;
+            for (VitalSign vital : readings) {
+                // the per-reading path the menu used to take: store, then evaluate thresholds
+                one.addVitalSign(vital);
+                if (!one.getThresholdRules().isWithinThreshold(vital)) {
+                    abnormal++;
+                }
+            }
+            long t1 = System.nanoTime();
+            VitalsDatabase batch = new VitalsDatabase(VitalsStorageMode.OBJECT);
+            int flagged = 0;
+            for (int from = 0; from < readings.size(); from += 5_000) {
+                for (List<VitalSign> perPatient : batch.addAll(readings.subList(from, from + 5_000)).values()) {
+                    flagged += perPatient.size();
+                }
+            }
+            long t2 = System.nanoTime();
+            check(batch.getVitalSignHistory("I0").size() == one.getVitalSignHistory("I0").size(), "both paths store every reading");
+            check(flagged == abnormal && abnormal > 0, "both paths flag the same abnormal readings");
+            if (round > 0) {
+                single += readings.size() * 1e9 / (t1 - t0);
+                batched += readings.size() * 1e9 / (t2 - t1);
+            }
+        }
+        System.out.printf("ingest of %,d readings: %.0f readings/sec one at a time, %.0f readings/sec in batches of 5000%n",
+                readings.size(), single / 2, batched / 2);
+        check(batched >= single / 2, "batched ingest is not slower than single inserts");
+    }
+
+    static void concurrentWritersLoseNoReadings() throws Exception {
+        Path archiveFile = Files.createTempFile("rpms-test", ".dat");
+        Files.delete(archiveFile);
+        int writers = 8;
+        int perWriter = 5_000;
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            patients.add(new Patient("C" + i, "Concurrent " + i, "c" + i + "@example.com", "F", LocalDate.of(1985, 1, 1)));
+        }
+        try (VitalsDatabase archived = new VitalsDatabase(archiveFile, id -> patients.get(id.charAt(1) - '0'))) {
+            for (VitalsDatabase db : List.of(new VitalsDatabase(VitalsStorageMode.OBJECT),
+                                             new VitalsDatabase(VitalsStorageMode.COLUMNAR), archived)) {
+                String mode = db.getStorageMode().toString();
+                ExecutorService pool = Executors.newFixedThreadPool(writers + 1);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> results = new ArrayList<>();
+                for (int w = 0; w < writers; w++) {
+                    int writer = w;
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < perWriter; i++) {
+                            // every writer hits every patient, with dates deliberately out of order
+                            Patient patient = patients.get((writer + i) % patients.size());
+                            db.addVitalSign(new VitalSign(patient, 60 + i % 40, 120, 36.6, 98,
+                                    LocalDate.of(2024, 1, 1).plusDays((i * 7919L + writer) % 200)));
+                        }
+                        return null;
+                    }));
+                }
+                results.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 200; i++) {
+                        for (Patient patient : patients) {
+                            db.getVitalSignHistory(patient.getUserID());
+                            db.getLatestVitalSign(patient.getUserID());
+                        }
+                    }
+                    return null;
+                }));
+                start.countDown();
+                for (Future<?> result : results) {
+                    result.get(2, TimeUnit.MINUTES);
+                }
+                pool.shutdown();
+                int total = 0;
+                boolean sorted = true;
+                for (Patient patient : patients) {
+                    List<VitalSign> history = db.getVitalSignHistory(patient.getUserID());
+                    total += history.size();
+                    for (int i = 1; i < history.size(); i++) {
+                        sorted &= !history.get(i).getCheckupDate().isBefore(history.get(i - 1).getCheckupDate());
+                    }
+                }
+                check(total == writers * perWriter, mode + " keeps every concurrently written reading: " + total);
+                check(sorted, mode + " series stay date ordered under concurrent writes");
+            }
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    static void slowNotifierCoalescesInsteadOfDroppingAlerts() throws Exception {
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        Notifiable slowSmtp = (to, subject, message) -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(message);
+        };
+        NotificationService notifier = new NotificationService(slowSmtp, slowSmtp);
+        VitalsDatabase db = new VitalsDatabase(VitalsStorageMode.OBJECT);
+        VitalsPipeline pipeline = new VitalsPipeline(db, () -> notifier, () -> List.of("doctor@example.com"), 64);
+        int patients = 20;
+        int breaches = 2_000;
+        List<Patient> roster = new ArrayList<>();
+        for (int i = 0; i < patients; i++) {
+            roster.add(new Patient("S" + i, "Slow " + i, "s" + i + "@example.com", "F", LocalDate.of(1960, 1, 1)));
+        }
+        for (int i = 0; i < breaches; i++) {
+            // the last reading per patient is the worst, so it is the one that must reach the doctor
+            pipeline.submit(new VitalSign(roster.get(i % patients), 120 + i / patients, 120, 36.6, 98, LocalDate.now()));
+        }
+        pipeline.close();
+        String stats = pipeline.getStats();
+        long sent = statistic(stats, "Alerts Sent");
+        long coalesced = statistic(stats, "Alerts Coalesced");
+        check(statistic(stats, "Stored") == breaches, "every reading is stored: " + stats);
+        check(sent + coalesced == breaches, "every breach is either sent or folded into a sent alert: " + stats);
+        check(sent == delivered.size(), "Alerts Sent counts real deliveries: " + sent + " vs " + delivered.size());
+        for (Patient patient : roster) {
+            String worst = "Patient " + patient.getUserID() + "'s vital signs are abnormal: HR=" + (120.0 + breaches / patients - 1);
+            check(delivered.stream().anyMatch(m -> m.contains(worst)), "worst reading reaches the doctor for " + patient.getUserID());
+        }
+        System.out.printf("%d breaches with a 50 ms notifier: %d alerts sent, %d coalesced%n", breaches, sent, coalesced);
+    }
+
+    static void slowNotifierNeverStallsStorage() throws Exception {
+        AtomicInteger delivered = new AtomicInteger();
+        Notifiable slowSmtp = (to, subject, message) -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+        };
+        NotificationService notifier = new NotificationService(slowSmtp, slowSmtp);
+        VitalsDatabase db = new VitalsDatabase(VitalsStorageMode.OBJECT);
+        VitalsPipeline pipeline = new VitalsPipeline(db, () -> notifier, () -> List.of("doctor@example.com"), 64);
+        int patients = 600;
+        int rounds = 3;
+        List<Patient> roster = new ArrayList<>();
+        for (int i = 0; i < patients; i++) {
+            roster.add(new Patient("N" + i, "Ward " + i, "n" + i + "@example.com", "M", LocalDate.of(1955, 1, 1)));
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (Patient patient : roster) {
+                pipeline.submit(new VitalSign(patient, 130 + r, 120, 36.6, 98, LocalDate.now()));
+            }
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (statistic(pipeline.getStats(), "Stored") < (long) patients * rounds && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        long storedMs = (System.nanoTime() - start) / 1_000_000;
+        int sentWhileStoring = delivered.get();
+        check(statistic(pipeline.getStats(), "Stored") == (long) patients * rounds,
+                "every reading is stored while " + patients + " patients wait on a slow notifier");
+        check(sentWhileStoring < patients, "storage finished ahead of the notifier: " + sentWhileStoring + " alerts sent");
+        pipeline.close();
+        String stats = pipeline.getStats();
+        check(statistic(stats, "Alerts Sent") + statistic(stats, "Alerts Coalesced") == (long) patients * rounds,
+                "every breach is sent or coalesced once the dispatcher catches up: " + stats);
+        System.out.printf("%d readings for %d alerting patients stored in %d ms with a 10 ms notifier%n",
+                patients * rounds, patients, storedMs);
+    }
+
+    static void rollingStatsFollowTodayAndSurviveRestart() throws Exception {
+        Path archiveFile = Files.createTempFile("rpms-test", ".dat");
+        Files.delete(archiveFile);
+        Patient patient = new Patient("R1", "Rolling Patient", "r1@example.com", "F", LocalDate.of(1950, 1, 1));
+        LocalDate today = LocalDate.now();
+        try {
+            try (VitalsDatabase db = new VitalsDatabase(archiveFile, id -> patient)) {
+                db.addVitalSign(new VitalSign(patient, 200, 120, 36.6, 98, today.minusDays(40)));
+                db.addVitalSign(new VitalSign(patient, 80, 120, 36.6, 98, today.minusDays(10)));
+                db.addVitalSign(new VitalSign(patient, 60, 120, 36.6, 98, today.minusDays(10)));
+                check(db.getRollingStats("R1", 7).get(VitalField.HEART_RATE).getCount() == 0,
+                        "a patient who stopped uploading has nothing in the last 7 days");
+            }
+            try (VitalsDatabase reopened = new VitalsDatabase(archiveFile, id -> patient)) {
+                VitalStatistics month = reopened.getRollingStats("R1", 30).get(VitalField.HEART_RATE);
+                check(month.getCount() == 2 && month.getMean() == 70 && month.getVariance() == 100,
+                        "30-day stats are rebuilt from the archive after a restart: " + month);
+            }
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+
+        // large offset, tiny spread: the naive sum-of-squares form cancels catastrophically here
+        RollingVitalStats window = new RollingVitalStats(7, 0.3);
+        LocalDate start = LocalDate.of(2010, 1, 1);
+        for (int day = 0; day < 3650; day++) {
+            for (int i = 0; i < 10; i++) {
+                window.add(new VitalSign(patient, 1e9 + i % 2, 120, 36.6, 98, start.plusDays(day)));
+            }
+        }
+        VitalStatistics stats = window.get(VitalField.HEART_RATE, start.plusDays(3649).toEpochDay());
+        check(stats.getCount() == 70 && Math.abs(stats.getVariance() - 0.25) < 1e-6,
+                "variance stays exact after ten years of rollover: " + stats.getVariance());
+    }
+
+    static void retentionRollsUpInEveryMode() throws Exception {
+        Path archiveFile = Files.createTempFile("rpms-test", ".dat");
+        Files.delete(archiveFile);
+        Patient patient = new Patient("T1", "Tiered Patient", "t1@example.com", "M", LocalDate.of(1955, 1, 1));
+        LocalDate today = LocalDate.now();
+        VitalsRetentionPolicy policy = new VitalsRetentionPolicy(7, 30, 10);
+        try {
+            try (VitalsDatabase archived = new VitalsDatabase(archiveFile, id -> patient)) {
+                for (VitalsDatabase db : List.of(new VitalsDatabase(VitalsStorageMode.OBJECT), archived)) {
+                    db.setRetentionPolicy(policy);
+                    for (int day = 20; day >= 0; day--) {
+                        db.addVitalSign(new VitalSign(patient, 60 + day, 120, 36.6, 98, today.minusDays(day)));
+                        db.addVitalSign(new VitalSign(patient, 80 + day, 120, 36.6, 98, today.minusDays(day)));
+                    }
+                    checkTiers(db.getVitalSignHistory("T1", today.minusDays(60), today), db.getStorageMode().toString());
+                }
+            }
+            try (VitalsDatabase reopened = new VitalsDatabase(archiveFile, id -> patient)) {
+                reopened.setRetentionPolicy(policy);
+                reopened.addVitalSign(new VitalSign(patient, 70, 120, 36.6, 98, today));
+                List<VitalSign> history = reopened.getVitalSignHistory("T1", today.minusDays(60), today);
+                long readings = history.stream()
+                        .mapToLong(v -> v instanceof RolledUpVitalSign ? ((RolledUpVitalSign) v).getReadingCount() : 1).sum();
+                check(readings == 43, "archived rollups are rebuilt after a restart: " + readings);
+            }
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    private static void checkTiers(List<VitalSign> history, String mode) {
+        long rollups = history.stream().filter(v -> v instanceof RolledUpVitalSign).count();
+        RolledUpVitalSign oldest = (RolledUpVitalSign) history.get(0);
+        check(rollups == 14 && history.size() == 14 + 14, mode + " keeps 7 raw days and rolls up the rest: " + history.size());
+        check(oldest.getReadingCount() == 2 && oldest.getHeartRate() == 90 && oldest.getPeriodEnd().equals(oldest.getPeriodStart()),
+                mode + " daily rollups carry their count, mean and period");
+    }
+
+    static void thresholdRulesFollowWardAndRejectInvertedBounds() throws Exception {
+        Path rulesFile = Files.createTempFile("rpms-rules", ".csv");
+        try {
+            Files.write(rulesFile, List.of("*,*,ICU,*,40,130,*,*,*,*,*,*"));
+            ThresholdRules rules = ThresholdRules.load(rulesFile);
+            Patient patient = new Patient("W1", "Ward Patient", "w1@example.com", "F", LocalDate.of(1970, 1, 1));
+            VitalSign fast = new VitalSign(patient, 120, 120, 36.6, 98, LocalDate.now());
+            check(!rules.isWithinThreshold(fast), "adult limits apply before a ward is set");
+            patient.setWard("icu");
+            check(rules.isWithinThreshold(fast), "the ICU rule applies once the ward is set");
+            patient.setWard(null);
+            check(!rules.isWithinThreshold(fast), "the cached plan is dropped when the ward changes");
+
+            for (String bad : List.of("60,18,*,*,*,*,*,*,*,*,*,*", "*,*,*,*,130,40,*,*,*,*,*,*")) {
+                Files.write(rulesFile, List.of(bad));
+                try {
+                    ThresholdRules.load(rulesFile);
+                    check(false, "inverted rule is rejected: " + bad);
+                } catch (RpmsException e) {
+                    check("RULES_ERROR".equals(e.getErrorCode()), "inverted rule fails with RULES_ERROR");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(rulesFile);
+        }
+    }
+
+    static void cachedRulePlansCostAboutAsMuchAsFixedLimits() throws Exception {
+        Path rulesFile = Files.createTempFile("rpms-rules", ".csv");
+        try {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                lines.add("*,*,WARD" + i + ",*,40,130,*,*,*,*,*,*");
+            }
+            lines.add("0,17,*,*,70,150,*,*,*,*,*,*");
+            Files.write(rulesFile, lines);
+            ThresholdRules rules = ThresholdRules.load(rulesFile);
+            List<VitalSign> readings = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                Patient patient = new Patient("R" + i, "Rule " + i, "r" + i + "@example.com", "F", LocalDate.of(1950 + i % 70, 1, 1));
+                patient.setWard("WARD" + i % 60);
+                for (int d = 0; d < 100; d++) {
+                    readings.add(new VitalSign(patient, 50 + (i + d) % 100, 120, 36.6, 98, LocalDate.of(2024, 1, 1).plusDays(d)));
+                }
+            }
+            double planned = 0;
+            double fixed = 0;
+            for (int round = 0; round < 3; round++) {
+                // the first round warms up the JIT and fills the plan cache; it is not counted
+                int withinPlanned = 0;
+                long t0 = System.nanoTime();
+                for (VitalSign vital : readings) {
+                    if (rules.isWithinThreshold(vital)) {
+                        withinPlanned++;
+                    }
+                }
+                long t1 = System.nanoTime();
+                int withinFixed = 0;
+                for (VitalSign vital : readings) {
+                    if (EmergencyAlert.isWithinThreshold(vital)) {
+                        withinFixed++;
+                    }
+                }
+                long t2 = System.nanoTime();
+                check(withinPlanned != withinFixed, "ward rules change the outcome for some readings");
+                if (round > 0) {
+                    planned += (t1 - t0) / (double) readings.size();
+                    fixed += (t2 - t1) / (double) readings.size();
+                }
+            }
+            System.out.printf("threshold check over %,d readings and %d rules: %.0f ns/reading with cached plans, %.0f ns/reading with fixed limits%n",
+                    readings.size(), rules.size(), planned / 2, fixed / 2);
+            check(planned / 2 <= Math.max(10 * fixed / 2, 500), "cached plan lookup stays close to the fixed-limit check");
+        } finally {
+            Files.deleteIfExists(rulesFile);
+        }
+    }
+
+    static void alertFanOutReportsRealOutcomesAndStaysBounded() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger();
+        Notifiable stalledSmtp = (to, subject, message) -> {
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+            }
+        };
+        NotificationService stalled = new NotificationService(stalledSmtp, stalledSmtp);
+        AlertService direct = new AlertService(stalled, List.of("a@example.com", "b@example.com"));
+        List<AlertDispatch> dispatches = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            dispatches.add(direct.sendAlertAsync("alert " + i, 100));
+        }
+        long fanOutThreads = Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().equals("alert-fan-out")).count();
+        check(fanOutThreads <= AlertService.MAX_FAN_OUT_THREADS, "a stalled SMTP server does not grow the fan-out pool past its cap: " + fanOutThreads);
+        for (AlertDispatch dispatch : dispatches) {
+            dispatch.await();
+        }
+        check(dispatches.get(0).getOutcomes().values().stream().allMatch(AlertDispatch.TIMED_OUT::equals),
+                "stalled direct sends time out: " + dispatches.get(0).getOutcomes());
+        Thread.sleep(200);
+        check(interrupted.get() > 0, "timed-out sends are interrupted");
+
+        Path journal = Files.createTempFile("rpms-outbox", ".log");
+        Files.delete(journal);
+        OutboundNotificationQueue slowQueue = new OutboundNotificationQueue((to, subject, message) -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, journal, 1);
+        try {
+            NotificationService queued = new NotificationService(slowQueue, slowQueue);
+            AlertService viaQueue = new AlertService(queued, List.of("c@example.com"));
+            AlertDispatch pending = viaQueue.sendAlertAsync("queued alert", 100);
+            pending.await();
+            check(AlertDispatch.QUEUED.equals(pending.getOutcomes().get("c@example.com")) && !pending.isLost(),
+                    "an alert still in the durable queue is reported as QUEUED, not SENT: " + pending.getOutcomes());
+            AlertDispatch delivered = viaQueue.sendAlertAsync("delivered alert", 5_000);
+            check(delivered.await(), "an alert the queue delivers in time is DELIVERED: " + delivered.getOutcomes());
+
+            Patient patient = new Patient("PB", "Panic Patient", "pb@example.com", "F", LocalDate.of(1990, 1, 1));
+            Doctor doctor = new Doctor("DB", "Doctor", "db@example.com", "M", LocalDate.of(2000, 1, 1));
+            AlertService panicAlerts = new AlertService(stalled, List.of(doctor.getContactInfo()));
+            panicAlerts.setFanOutDeadline(100);
+            AlertDispatch panic = new PanicButton(patient, doctor, panicAlerts).pressPanicButton();
+            check(!panic.allDelivered(), "a stalled panic alert reports degraded delivery instead of throwing");
+        } finally {
+            slowQueue.close();
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    static void alertReachesEveryRecipientInOneSendLatency() throws Exception {
+        long latencyMs = 200;
+        Map<String, Long> arrivals = new ConcurrentHashMap<>();
+        Notifiable fakeSmtp = (to, subject, message) -> {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            arrivals.put(to, System.nanoTime());
+        };
+        List<String> doctors = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            doctors.add("doctor" + i + "@example.com");
+        }
+        AlertService alerts = new AlertService(new NotificationService(fakeSmtp, fakeSmtp), doctors);
+        long start = System.nanoTime();
+        AlertDispatch dispatch = alerts.sendAlertAsync("ward-wide alert", 5_000);
+        check(dispatch.await(), "every recipient is delivered: " + dispatch.getOutcomes());
+        long lastMs = (arrivals.values().stream().mapToLong(Long::longValue).max().orElse(start) - start) / 1_000_000;
+        check(arrivals.size() == doctors.size() && lastMs < 2 * latencyMs,
+                "the last of " + doctors.size() + " recipients hears within about one send latency: " + lastMs + " ms");
+        System.out.printf("%d recipients with a %d ms SMTP server: last delivery after %d ms%n", doctors.size(), latencyMs, lastMs);
+    }
+
+    // Stand-in SMTP transport, installed as the session's smtp provider, that counts live connections.
+    public static class FakeSmtpTransport extends Transport {
+        static final Queue<FakeSmtpTransport> CONNECTED = new ConcurrentLinkedQueue<>();
+        static final AtomicInteger LIVE = new AtomicInteger();
+        static final AtomicInteger PEAK = new AtomicInteger();
+        static final AtomicInteger DELIVERED = new AtomicInteger();
+        static final AtomicInteger FAILURES_TO_INJECT = new AtomicInteger();
+
+        public FakeSmtpTransport(Session session, URLName url) {
+            super(session, url);
+        }
+
+        @Override
+        protected boolean protocolConnect(String host, int port, String user, String password) {
+            PEAK.accumulateAndGet(LIVE.incrementAndGet(), Math::max);
+            CONNECTED.add(this);
+            return true;
+        }
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+            if (FAILURES_TO_INJECT.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new MessagingException("connection reset by fake server");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            DELIVERED.incrementAndGet();
+        }
+
+        // Simulates the server dropping an idle connection.
+        void drop() {
+            if (CONNECTED.remove(this)) {
+                LIVE.decrementAndGet();
+            }
+            setConnected(false);
+        }
+
+        @Override
+        public synchronized void close() throws MessagingException {
+            if (CONNECTED.remove(this)) {
+                LIVE.decrementAndGet();
+            }
+            super.close();
+        }
+    }
+
+    static void smtpPoolBoundsConnectionsAndRetriesOnce() throws Exception {
+        Session session = Session.getInstance(new Properties());
+        session.setProvider(new Provider(Provider.Type.TRANSPORT, "smtp", FakeSmtpTransport.class.getName(), "RPMS test", "1"));
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("rpms@example.com"));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse("doctor@example.com"));
+        message.setSubject("Pool check");
+        message.setText("pooled");
+        int poolSize = 3;
+        SmtpTransportPool pool = new SmtpTransportPool(session, "smtp.example.com", 587, "rpms", "secret", poolSize);
+        try {
+            int threads = 8;
+            int perThread = 50;
+            ExecutorService senders = Executors.newFixedThreadPool(threads);
+            List<Future<?>> sends = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                sends.add(senders.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        pool.send(message);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : sends) {
+                f.get();
+            }
+            senders.shutdown();
+            check(FakeSmtpTransport.DELIVERED.get() == threads * perThread, "every pooled send is delivered");
+            check(FakeSmtpTransport.PEAK.get() <= poolSize && pool.getConnectCount() <= poolSize,
+                    "concurrent senders share at most " + poolSize + " connections: peak " + FakeSmtpTransport.PEAK.get());
+
+            long connects = pool.getConnectCount();
+            for (FakeSmtpTransport transport : new ArrayList<>(FakeSmtpTransport.CONNECTED)) {
+                transport.drop();
+            }
+            pool.send(message);
+            check(pool.getConnectCount() == connects + 1 && FakeSmtpTransport.LIVE.get() == 1,
+                    "a dropped idle connection is replaced: " + pool.getConnectCount() + " connects");
+
+            int delivered = FakeSmtpTransport.DELIVERED.get();
+            FakeSmtpTransport.FAILURES_TO_INJECT.set(1);
+            pool.send(message);
+            check(FakeSmtpTransport.DELIVERED.get() == delivered + 1, "a failed send is retried once on a fresh connection");
+            FakeSmtpTransport.FAILURES_TO_INJECT.set(2);
+            try {
+                pool.send(message);
+                check(false, "a send that fails twice is reported");
+            } catch (RpmsException e) {
+                check("EMAIL_ERROR".equals(e.getErrorCode()), "a send that fails twice fails with EMAIL_ERROR");
+            }
+            check(pool.getOpenConnections() <= poolSize, "failed sends do not leak connections: " + pool.getOpenConnections());
+        } finally {
+            pool.close();
+        }
+        check(FakeSmtpTransport.LIVE.get() == 0, "closing the pool closes every idle connection");
+    }
+
+    static void outboundQueueKeepsAlertsOutOfDigestsAndSwapsWithoutDuplicates() throws Exception {
+        Path journal = Files.createTempFile("rpms-outbox", ".log");
+        Files.delete(journal);
+        List<String> sentByOld = Collections.synchronizedList(new ArrayList<>());
+        List<String> sentByNew = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstSendStarted = new CountDownLatch(1);
+        Notifiable oldAccount = (to, subject, message) -> {
+            firstSendStarted.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sentByOld.add(subject);
+        };
+        OutboundNotificationQueue queue = new OutboundNotificationQueue(oldAccount, journal, 1);
+        try {
+            queue.sendNotification("doc@example.com", "Reminder", "first");
+            firstSendStarted.await();
+            for (int i = 0; i < 3; i++) {
+                queue.sendNotification("doc@example.com", "Reminder", "digest " + i);
+            }
+            queue.sendNotification("doc@example.com", AlertService.ALERT_SUBJECT, "patient crashing");
+            Notifiable previous = queue.replaceDelegate((to, subject, message) -> sentByNew.add(subject));
+            check(previous == oldAccount && sentByOld.size() == 1, "the swap waits for the old account's in-flight send");
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (queue.getDepth() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            check(sentByNew.equals(List.of(AlertService.ALERT_SUBJECT, "3 notifications from RPMS")),
+                    "the alert goes out alone and first, the rest as one digest: " + sentByNew);
+            check(queue.getDelivered() == 5, "nothing is sent twice across the swap: " + queue.getDelivered());
+        } finally {
+            queue.close();
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    static void userRegistryListsRolesInRegistrationOrder() throws Exception {
+        UserRegistry users = new UserRegistry();
+        List<String> registered = List.of("D9", "D10", "D2", "D1");
+        for (String id : registered) {
+            users.register(new Doctor(id, "Doctor " + id, id.toLowerCase() + "@example.com", "F", LocalDate.of(2010, 1, 1)));
+        }
+        users.register(new Patient("P9", "Patient", "p9@example.com", "M", LocalDate.of(1990, 1, 1)));
+        List<String> listed = new ArrayList<>();
+        for (Doctor doctor : users.getDoctors()) {
+            listed.add(doctor.getUserID());
+        }
+        check(listed.equals(registered), "doctors are listed in registration order: " + listed);
+        check("D9".equals(users.getDoctors().stream().findFirst().map(Doctor::getUserID).orElse(null)),
+                "the panic button goes to the first doctor registered");
+        users.remove(users.findDoctor("D9"));
+        check("D10".equals(users.getDoctors().iterator().next().getUserID()), "removing a doctor keeps the order of the rest");
+    }
+
+    static void appointmentRemindersFollowApproval() throws Exception {
+        List<String> reminders = Collections.synchronizedList(new ArrayList<>());
+        Notifiable inbox = (to, subject, message) -> reminders.add(message);
+        ReminderService service = new ReminderService(new NotificationService(inbox, inbox));
+        Patient patient = new Patient("RA", "Reminded Patient", "ra@example.com", "F", LocalDate.of(1980, 1, 1));
+        Doctor doctor = new Doctor("RD", "Reminding", "rd@example.com", "M", LocalDate.of(2000, 1, 1));
+        LocalDateTime now = LocalDateTime.now();
+        long nowMillis = System.currentTimeMillis();
+
+        Appointment soon = new Appointment("soon", now.plusHours(2), patient, doctor);
+        soon.compareAndSetStatus(AppointmentStatus.PENDING, AppointmentStatus.APPROVED);
+        service.addAppointment(soon);
+        check(reminders.size() == 1, "approving inside the 24h lead reminds the patient straight away");
+
+        Appointment later = new Appointment("later", now.plusHours(48), patient, doctor);
+        later.compareAndSetStatus(AppointmentStatus.PENDING, AppointmentStatus.APPROVED);
+        service.addAppointment(later);
+        Appointment dropped = new Appointment("dropped", now.plusHours(72), patient, doctor);
+        dropped.compareAndSetStatus(AppointmentStatus.PENDING, AppointmentStatus.APPROVED);
+        service.addAppointment(dropped);
+        service.cancelAppointmentReminder("dropped");
+        service.fireDue(nowMillis + TimeUnit.HOURS.toMillis(25));
+        check(reminders.size() == 2 && reminders.get(1).contains(later.getAppointmentTime().toString()),
+                "an approved appointment is reminded at T-24h");
+        service.fireDue(nowMillis + TimeUnit.HOURS.toMillis(73));
+        check(reminders.size() == 2 && service.getPendingReminders() == 0, "a cancelled appointment is never reminded");
+        service.sendAppointmentReminder();
+        check(reminders.size() == 2, "fired and cancelled appointments are pruned from the reminder list");
+    }
+
+    static void prescriptionSchedulesKeepFreeTextAndAnchorOnIssueDay() throws Exception {
+        Patient patient = new Patient("RX", "Prescribed Patient", "rx@example.com", "M", LocalDate.of(1975, 5, 5));
+        Prescription afterMeals = new Prescription("RX1", patient, "Metformin", "500mg", "after meals");
+        check(afterMeals.getSchedule().equals("after meals") && afterMeals.getRecurrence().isAsNeeded(),
+                "free-text schedules are kept without a recurrence");
+
+        Prescription everyFive = new Prescription("RX2", patient, "Ibuprofen", "200mg", "every 5h from 08:00");
+        LocalDate issued = everyFive.getIssuedOn();
+        MedicationSchedule recurrence = everyFive.getRecurrence();
+        check(recurrence.nextFireAfter(issued.atStartOfDay()).equals(issued.atTime(8, 0)),
+                "the first interval dose is at the stated time on the issue day");
+        check(recurrence.nextFireAfter(issued.atTime(8, 0)).equals(issued.atTime(13, 0))
+                && recurrence.nextFireAfter(issued.atTime(23, 0)).equals(issued.plusDays(1).atTime(4, 0)),
+                "interval doses step from the issue-day anchor");
+
+        for (String oversized : List.of("every 99999999999h", "every 999999h", "every 200h", "q99999h")) {
+            try {
+                MedicationSchedule.parse(oversized);
+                check(false, "'" + oversized + "' is rejected by the strict parser");
+            } catch (RpmsException e) {
+                check("INVALID_SCHEDULE".equals(e.getErrorCode()), "'" + oversized + "' fails with INVALID_SCHEDULE");
+            }
+            Prescription kept = new Prescription("RX3", patient, "Vitamin D", "1000IU", oversized);
+            check(kept.getRecurrence().isAsNeeded(), "'" + oversized + "' is kept as free text with no reminders");
+        }
+        check(MedicationSchedule.parse("every 168h").nextFireAfter(issued.atStartOfDay()) != null,
+                "a weekly interval is still accepted");
+    }
+
+    static void concurrentBookingsNeverOverlap() throws Exception {
+        AppointmentManager manager = new AppointmentManager();
+        Doctor doctor = new Doctor("BD", "Booked", "bd@example.com", "F", LocalDate.of(2001, 2, 3));
+        Patient patient = new Patient("BP", "Booking Patient", "bp@example.com", "M", LocalDate.of(1990, 3, 4));
+        LocalDateTime day = LocalDate.now().plusDays(1).atTime(8, 0);
+        int threads = 8;
+        int perThread = 500;
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger unexpected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    LocalDateTime time = day.plusMinutes(15L * random.nextInt(40));
+                    Duration length = Duration.ofMinutes(15L * (1 + random.nextInt(6)));
+                    try {
+                        manager.requestAppointment("B" + thread + "-" + i, time, patient, doctor, length);
+                        booked.incrementAndGet();
+                    } catch (RpmsException e) {
+                        if (!"SLOT_TAKEN".equals(e.getErrorCode())) {
+                            unexpected.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsedNanos = System.nanoTime() - begin;
+        pool.shutdown();
+
+        List<Appointment> calendar = new ArrayList<>(manager.getDoctorAppointments(doctor, day.minusHours(1), day.plusDays(1)));
+        boolean overlaps = false;
+        for (int i = 1; i < calendar.size(); i++) {
+            overlaps |= calendar.get(i).getAppointmentTime().isBefore(calendar.get(i - 1).getEndTime());
+        }
+        check(unexpected.get() == 0, "contended bookings only fail with SLOT_TAKEN");
+        check(booked.get() > 0 && booked.get() == calendar.size(), "every successful booking is in the calendar");
+        check(!overlaps, "concurrent bookings never double-book the doctor");
+        System.out.printf("%d contended booking requests from %d threads: %d booked, %.0f requests/sec%n",
+                threads * perThread, threads, booked.get(), threads * perThread * 1e9 / elapsedNanos);
+
+        // uncontended throughput: the same threads fill adjacent, non-overlapping slots of one doctor
+        Doctor busy = new Doctor("BT", "Throughput", "bt@example.com", "M", LocalDate.of(2002, 4, 5));
+        int slotsPerThread = 2_000;
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService fillers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> filled = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            filled.add(fillers.submit(() -> {
+                go.await();
+                for (int i = 0; i < slotsPerThread; i++) {
+                    manager.requestAppointment("T" + thread + "-" + i, day.plusMinutes(30L * (i * threads + thread)), patient, busy);
+                }
+                return null;
+            }));
+        }
+        long fillStart = System.nanoTime();
+        go.countDown();
+        for (Future<?> f : filled) {
+            f.get();
+        }
+        long fillNanos = System.nanoTime() - fillStart;
+        fillers.shutdown();
+        check(manager.getDoctorAppointments(busy, day, day.plusDays(365)).size() == threads * slotsPerThread,
+                "non-overlapping concurrent bookings all succeed");
+        System.out.printf("%d non-overlapping bookings from %d threads: %.0f bookings/sec%n",
+                threads * slotsPerThread, threads, threads * slotsPerThread * 1e9 / fillNanos);
+    }
+
+    static void racingApproveAndCancelKeepStatusIndexConsistent() throws Exception {
+        AppointmentManager manager = new AppointmentManager();
+        Doctor doctor = new Doctor("SD", "Status", "sd@example.com", "M", LocalDate.of(1999, 9, 9));
+        Patient patient = new Patient("SP", "Status Patient", "sp@example.com", "F", LocalDate.of(1985, 8, 7));
+        LocalDateTime day = LocalDate.now().plusDays(2).atStartOfDay();
+        int count = 500;
+        List<LocalDateTime> times = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            times.add(day.plusMinutes(30L * i));
+            manager.requestAppointment("S" + i, times.get(i), patient, doctor);
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<?> approver = pool.submit(() -> {
+            start.await();
+            for (LocalDateTime time : times) {
+                try {
+                    manager.approveAppointment(time, patient, doctor);
+                } catch (RpmsException ignored) {
+                    // lost the race to the canceller
+                }
+            }
+            return null;
+        });
+        Future<?> canceller = pool.submit(() -> {
+            start.await();
+            for (int i = 0; i < count; i += 2) {
+                try {
+                    manager.cancelAppointment(times.get(i), patient, doctor);
+                } catch (RpmsException ignored) {
+                    // already released by an earlier cancel
+                }
+            }
+            return null;
+        });
+        start.countDown();
+        approver.get();
+        canceller.get();
+        pool.shutdown();
+
+        boolean consistent = true;
+        for (AppointmentStatus status : AppointmentStatus.values()) {
+            for (Appointment a : manager.getAppointments(status)) {
+                consistent &= a.getAppointmentStatus() == status;
+            }
+        }
+        int indexed = 0;
+        for (AppointmentStatus status : AppointmentStatus.values()) {
+            indexed += manager.getAppointments(status).size();
+        }
+        check(consistent && indexed == count, "racing approve and cancel leave each appointment in exactly its status index");
+        check(manager.getAppointments(AppointmentStatus.CANCELLED).size() == count / 2, "every targeted appointment ends up cancelled");
+    }
+
+    static void chatDeliveryKeepsOrderAcrossResubscribes() throws Exception {
+        ChatServer server = new ChatServer();
+        int senders = 4;
+        int perSender = 5000;
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        Consumer<ChatMessage> listener = message -> seen.add(message.getContent());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(senders + 1);
+        List<Future<?>> sending = new ArrayList<>();
+        for (int t = 0; t < senders; t++) {
+            String sender = "CS" + t;
+            sending.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perSender; i++) {
+                    server.sendMessage(new ChatMessage(sender, "CR", sender + ":" + i));
+                }
+                return null;
+            }));
+        }
+        Future<?> toggler = pool.submit(() -> {
+            start.await();
+            while (!sending.stream().allMatch(Future::isDone)) {
+                server.subscribe("CR", listener);
+                Thread.yield();
+                server.unsubscribe("CR", listener);
+            }
+            return null;
+        });
+        start.countDown();
+        for (Future<?> f : sending) {
+            f.get();
+        }
+        toggler.get();
+        pool.shutdown();
+        for (ChatMessage message : server.getUnreadMessages("CR")) {
+            seen.add(message.getContent());
+        }
+
+        Map<String, Integer> next = new HashMap<>();
+        boolean inOrder = seen.size() == senders * perSender;
+        for (String content : seen) {
+            String sender = content.substring(0, content.indexOf(':'));
+            int expected = next.getOrDefault(sender, 0);
+            inOrder &= content.equals(sender + ":" + expected);
+            next.put(sender, expected + 1);
+        }
+        check(inOrder, "pushed and unread messages arrive exactly once and in each sender's order");
+        check(server.getUnreadCount("CR") == 0, "the unread counter matches the drained mailbox");
+    }
+
+    // Defaults to 1M stored messages; the 10M run from the request is -Drpms.bench.messages=10000000 -Xmx4g.
+    static void unreadLookupIgnoresStoredHistory() throws Exception {
+        long maxMessages = Long.getLong("rpms.bench.messages", 1_000_000);
+        ChatServer server = new ChatServer();
+        int users = 1_000;
+        long stored = 0;
+        double baselineMicros = -1;
+        for (long checkpoint = 10_000; checkpoint <= maxMessages; checkpoint = nextCheckpoint(checkpoint, maxMessages)) {
+            for (; stored < checkpoint; stored++) {
+                server.sendMessage(new ChatMessage("UB" + (stored % users), "UA" + (stored * 7 % users), "m"));
+            }
+            for (int u = 0; u < users; u++) {
+                server.getUnreadMessages("UA" + u);
+            }
+            double micros = unreadLookupMicros(server);
+            if (baselineMicros < 0) {
+                baselineMicros = micros;
+            }
+            System.out.printf("unread lookup of 10 new messages with %,d messages stored: %.1f us%n", stored, micros);
+            check(micros <= Math.max(4 * baselineMicros, baselineMicros + 20),
+                    "unread lookup stays flat at " + stored + " messages: " + micros + " us vs " + baselineMicros + " us");
+            // the timed rounds stored messages of their own
+            stored += 2 * 2_000 * 10;
+        }
+    }
+
+    private static double unreadLookupMicros(ChatServer server) throws Exception {
+        long elapsed = 0;
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            elapsed = 0;
+            for (int i = 0; i < 2_000; i++) {
+                for (int m = 0; m < 10; m++) {
+                    server.sendMessage(new ChatMessage("UB1", "UA0", "new " + m));
+                }
+                long start = System.nanoTime();
+                List<ChatMessage> unread = server.getUnreadMessages("UA0");
+                elapsed += System.nanoTime() - start;
+                check(unread.size() == 10, "only the new messages are unread");
+            }
+        }
+        return elapsed / 1_000.0 / 2_000;
+    }
+
+    // Each thread chats in its own conversation, so sends should only share the CPU, not a lock. On a
+    // machine with fewer cores than threads the rate cannot grow, but it must not collapse either.
+    static void chatSendThroughputHoldsUpAcrossThreads() throws Exception {
+        int perThread = 100_000;
+        double single = -1;
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            double best = 0;
+            for (int round = 0; round < 3; round++) {
+                ChatServer server = new ChatServer();
+                CountDownLatch start = new CountDownLatch(1);
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                List<Future<?>> sending = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    String sender = "TS" + t;
+                    String receiver = "TR" + t;
+                    sending.add(pool.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < perThread; i++) {
+                            server.sendMessage(new ChatMessage(sender, receiver, "m"));
+                        }
+                        return null;
+                    }));
+                }
+                long t0 = System.nanoTime();
+                start.countDown();
+                for (Future<?> f : sending) {
+                    f.get();
+                }
+                long elapsed = System.nanoTime() - t0;
+                pool.shutdown();
+                check(server.getConversationSize("TS0", "TR0") == perThread, "every send is stored");
+                best = Math.max(best, threads * (double) perThread * 1e9 / elapsed);
+            }
+            if (single < 0) {
+                single = best;
+            }
+            System.out.printf("chat send with %d threads on %d cores: %.0f messages/sec%n",
+                    threads, Runtime.getRuntime().availableProcessors(), best);
+            check(best >= single / 3, "send throughput does not collapse at " + threads + " threads");
+        }
+    }
+
+    static void chatHistoryKeepsSendTimesAndPagesBack() throws Exception {
+        ChatServer server = new ChatServer();
+        ChatMessage written = new ChatMessage("HA", "HB", "written first");
+        LocalDateTime writtenAt = written.getTimestamp();
+        Thread.sleep(5);
+        ChatMessage overtaking = new ChatMessage("HB", "HA", "stored first");
+        server.sendMessage(overtaking);
+        server.sendMessage(written);
+        List<ChatMessage> log = server.getMessagesBetween("HA", "HB");
+        check(written.getTimestamp().equals(writtenAt) && log.get(0) == overtaking && log.get(1) == written,
+                "storing keeps the send time and orders by sequence ID");
+        check(server.getMessagesSince("HA", "HB", overtaking.getTimestamp(), 10).size() == 2,
+                "since() still finds messages stored after the cursor");
+
+        for (int i = 0; i < 2 * ChatClient.HISTORY_PAGE_SIZE + 5; i++) {
+            server.sendMessage(new ChatMessage("HA", "HB", "page " + i));
+        }
+        int pages = 0;
+        int messages = 0;
+        long cursor = Long.MAX_VALUE;
+        while (cursor > 0) {
+            List<ChatMessage> page = server.getMessagesBefore("HA", "HB", cursor, ChatClient.HISTORY_PAGE_SIZE);
+            pages++;
+            messages += page.size();
+            cursor = page.get(0).getMessageId();
+        }
+        check(pages == 3 && messages == log.size() + 2 * ChatClient.HISTORY_PAGE_SIZE + 5,
+                "paging back with the returned cursor reaches the first message");
+
+        ConversationLog conversation = new ConversationLog();
+        for (int i = 0; i < 3; i++) {
+            conversation.append(new ChatMessage("HA", "HB", "edge " + i));
+        }
+        check(conversation.after(Long.MAX_VALUE, 10).isEmpty(), "a cursor at Long.MAX_VALUE pages forward to nothing");
+        check(conversation.after(Long.MAX_VALUE - 1, Integer.MAX_VALUE).isEmpty(), "a huge cursor and page size do not overflow");
+        for (int negative : new int[] {-1, Integer.MIN_VALUE}) {
+            try {
+                conversation.before(conversation.size(), negative);
+                check(false, "before() rejects page size " + negative);
+            } catch (RpmsException e) {
+                check("INVALID_INPUT".equals(e.getErrorCode()), "before() fails with INVALID_INPUT");
+            }
+            try {
+                conversation.after(-1, negative);
+                check(false, "after() rejects page size " + negative);
+            } catch (RpmsException e) {
+                check("INVALID_INPUT".equals(e.getErrorCode()), "after() fails with INVALID_INPUT");
+            }
+        }
+    }
+
+    private static long statistic(String stats, String name) {
+        for (String line : stats.split("\n")) {
+            if (line.startsWith(name + ": ")) {
+                return Long.parseLong(line.substring(name.length() + 2).trim());
+            }
+        }
+        return -1;
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAIL: " + description);
+        }
+    }
+}